@@ -0,0 +1,320 @@
+package com.hng.wallet_service.archive;
+
+import com.hng.wallet_service.dto.TransactionSummaryDTO;
+import com.hng.wallet_service.models.JournalEntry;
+import com.hng.wallet_service.models.enums.LedgerAccount;
+import com.hng.wallet_service.models.enums.TransactionStatus;
+import com.hng.wallet_service.models.enums.TransactionType;
+import com.hng.wallet_service.repositories.JournalRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Cold tier of the journal. Months detached from journal_postings are written
+ * to one segment file each (see {@link JournalSegment}) and dropped from the
+ * database, so the hot table only spans the retention window. Segments are
+ * memory-mapped and read through by history pages, statements and point-in-time
+ * balances.
+ * - archive-dir must be storage shared by every instance. The journal_archive_month
+ *   table lists the archived months; each instance loads their segments, oldest
+ *   first, at startup and every archive-sync-ms, and records the newest it has
+ *   in journal_archive_reader
+ * - Readers take postings before {@link #archivedUntil} from the segments and
+ *   the rest from journal_postings, so a month's table can stay attached until
+ *   every instance has loaded its segment
+ * - Segments are never deleted implicitly: with no wallets in the database an
+ *   instance refuses to start over an archive unless told to clear it
+ */
+@Component
+@DependsOn("databaseMigrations")
+@RequiredArgsConstructor
+public class JournalArchive {
+
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final int FETCH_SIZE = 1000;
+
+    private final DataSource dataSource;
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+    private final NavigableMap<YearMonth, JournalSegment> segments = new ConcurrentSkipListMap<>();
+    private final String instanceId = UUID.randomUUID().toString();
+
+    @Value("${wallet.journal.archive-dir:journal-archive}")
+    private String archiveDir;
+
+    // Instances not heard from for this long no longer hold back dropping a month
+    @Value("${wallet.journal.archive-reader-timeout-seconds:300}")
+    private long readerTimeoutSeconds;
+
+    @Value("${wallet.journal.archive-clear-on-empty-schema:false}")
+    private boolean clearOnEmptySchema;
+
+    private Path directory;
+    private JdbcTemplate cursorTemplate;
+    private TransactionTemplate readOnlyTransaction;
+
+    @PostConstruct
+    void init() throws IOException {
+        directory = Paths.get(archiveDir);
+        Files.createDirectories(directory);
+        cursorTemplate = new JdbcTemplate(dataSource);
+        cursorTemplate.setFetchSize(FETCH_SIZE);
+        readOnlyTransaction = new TransactionTemplate(transactionManager);
+        readOnlyTransaction.setReadOnly(true);
+
+        boolean localSegments = false;
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.toList()) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(TEMP_SUFFIX)) {
+                    // An archive run died before the rename; its month was never registered
+                    Files.delete(file);
+                } else if (name.endsWith(SEGMENT_SUFFIX)) {
+                    localSegments = true;
+                }
+            }
+        }
+
+        // A fresh schema over an existing archive: its months would be attributed to new wallets
+        Boolean noWallets = jdbcTemplate.queryForObject("SELECT NOT EXISTS (SELECT 1 FROM wallet)", Boolean.class);
+        if (Boolean.TRUE.equals(noWallets) && (localSegments || !registeredMonths().isEmpty())) {
+            if (!clearOnEmptySchema) {
+                throw new IllegalStateException("The database has no wallets but the journal archive in "
+                        + directory.toAbsolutePath() + " holds archived months. Point wallet.journal.archive-dir "
+                        + "at this database's archive, or set wallet.journal.archive-clear-on-empty-schema=true "
+                        + "to delete it");
+            }
+            System.out.println("Clearing the journal archive of a schema whose wallets are gone");
+            clear();
+        }
+
+        // Seen before loading, so no month is dropped while this instance starts
+        reportLoaded();
+        load(true);
+        if (!segments.isEmpty()) {
+            System.out.println("Journal archive holds " + segments.size() + " months, "
+                    + segments.firstKey() + " to " + segments.lastKey());
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        jdbcTemplate.update("DELETE FROM journal_archive_reader WHERE instance_id = ?", instanceId);
+    }
+
+    // Picks up months archived by other instances
+    @Scheduled(fixedDelayString = "${wallet.journal.archive-sync-ms:60000}")
+    public void sync() {
+        load(false);
+    }
+
+    // Months are loaded oldest first and never past a missing one, so the loaded ones are contiguous
+    private void load(boolean startup) {
+        for (YearMonth month : registeredMonths()) {
+            if (segments.containsKey(month)) {
+                continue;
+            }
+            Path file = segmentFile(month);
+            if (!Files.exists(file)) {
+                String message = "Archived journal month " + month + " is missing from " + directory.toAbsolutePath()
+                        + ": wallet.journal.archive-dir must be storage shared by every instance";
+                if (startup) {
+                    throw new IllegalStateException(message);
+                }
+                System.err.println(message);
+                break;
+            }
+            try {
+                segments.put(month, JournalSegment.open(file, month));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot open archived journal month " + month, e);
+            }
+        }
+        reportLoaded();
+    }
+
+    private void reportLoaded() {
+        jdbcTemplate.update("INSERT INTO journal_archive_reader (instance_id, newest_month, seen_at) "
+                        + "VALUES (?, ?, now()) ON CONFLICT (instance_id) "
+                        + "DO UPDATE SET newest_month = EXCLUDED.newest_month, seen_at = now()",
+                instanceId, segments.isEmpty() ? null : Date.valueOf(segments.lastKey().atDay(1)));
+    }
+
+    // Every archived month, oldest first
+    public List<YearMonth> registeredMonths() {
+        return jdbcTemplate.query("SELECT month FROM journal_archive_month ORDER BY month",
+                (rs, rowNum) -> YearMonth.from(rs.getDate(1).toLocalDate()));
+    }
+
+    /**
+     * Whether every instance seen lately has loaded the month's segment, so no
+     * reader needs its table any more.
+     */
+    public boolean isLoadedEverywhere(YearMonth month) {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject("SELECT NOT EXISTS (SELECT 1 FROM journal_archive_reader "
+                        + "WHERE seen_at > now() - make_interval(secs => ?) "
+                        + "AND (newest_month IS NULL OR newest_month < ?))",
+                Boolean.class, readerTimeoutSeconds, Date.valueOf(month.atDay(1))));
+    }
+
+    /**
+     * Postings before this instant are read from the archive, the rest from
+     * journal_postings: the start of the month after the newest loaded segment.
+     */
+    public Instant archivedUntil() {
+        return segments.isEmpty() ? Instant.EPOCH : JournalRepository.startOf(segments.lastKey().plusMonths(1));
+    }
+
+    /**
+     * Writes the month's partition, attached or detached, to its segment,
+     * registers it and returns the number of postings archived. The month must be
+     * closed and every older month archived. The table is left for the caller to
+     * drop once {@link #isLoadedEverywhere} says so.
+     */
+    public long archive(YearMonth month) {
+        String table = JournalRepository.partitionName(month);
+        Path target = segmentFile(month);
+        Path temp = directory.resolve(table + SEGMENT_SUFFIX + TEMP_SUFFIX);
+
+        long postings;
+        try (JournalSegment.Writer writer = new JournalSegment.Writer(temp, month)) {
+            // Wallet-less contra postings cluster under 0, ahead of every wallet
+            readOnlyTransaction.executeWithoutResult(status -> cursorTemplate.query(
+                    "SELECT journal_id, leg, reference, account, wallet_id, type, amount, counterpart_wallet_id, "
+                            + "balance_after, posted_at FROM " + table
+                            + " ORDER BY COALESCE(wallet_id, 0), posted_at, journal_id, leg",
+                    rs -> {
+                        try {
+                            writer.add(rs.getLong("journal_id"), rs.getInt("leg"),
+                                    rs.getObject("posted_at", OffsetDateTime.class).toInstant(), toPosting(rs));
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    }));
+            postings = writer.finish();
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            jdbcTemplate.update("INSERT INTO journal_archive_month (month, postings, archived_at) VALUES (?, ?, now()) "
+                            + "ON CONFLICT (month) DO UPDATE SET postings = EXCLUDED.postings, archived_at = now()",
+                    Date.valueOf(month.atDay(1)), postings);
+            segments.put(month, JournalSegment.open(target, month));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot archive journal month " + month, e);
+        }
+        reportLoaded();
+        return postings;
+    }
+
+    /**
+     * Up to {@code limit} of the wallet's archived postings strictly before the
+     * given one, newest first, as history rows. A null postedAt starts from the
+     * newest archived posting.
+     */
+    public List<TransactionSummaryDTO> findPageBefore(Long walletId, Instant postedAt, long journalId, int leg,
+            int limit) {
+        List<ArchivedPosting> postings = new ArrayList<>();
+        NavigableMap<YearMonth, JournalSegment> candidates = postedAt == null
+                ? segments.descendingMap()
+                : segments.headMap(JournalRepository.monthOf(postedAt), true).descendingMap();
+        for (JournalSegment segment : candidates.values()) {
+            if (postings.size() >= limit) {
+                break;
+            }
+            segment.readBefore(walletId, postedAt, journalId, leg, limit, postings);
+        }
+
+        List<TransactionSummaryDTO> rows = new ArrayList<>(postings.size());
+        for (ArchivedPosting archived : postings) {
+            rows.add(new TransactionSummaryDTO(archived.journalId(), archived.leg(), archived.posting().type(),
+                    archived.posting().amount().abs(), TransactionStatus.SUCCESS, archived.postedAt()));
+        }
+        return rows;
+    }
+
+    // The wallet's archived postings from 'from' (inclusive) to 'to' (exclusive), oldest first
+    public void forEachPosting(Long walletId, Instant from, Instant to, Consumer<ArchivedPosting> consumer) {
+        if (!from.isBefore(to)) {
+            return;
+        }
+        for (JournalSegment segment : segments.subMap(JournalRepository.monthOf(from), true,
+                JournalRepository.monthOf(to), true).values()) {
+            segment.readRange(walletId, from, to, consumer);
+        }
+    }
+
+    // Net signed amount of the wallet's archived postings in [from, to)
+    public BigDecimal sumPostings(Long walletId, Instant from, Instant to) {
+        BigDecimal[] sum = {BigDecimal.ZERO};
+        forEachPosting(walletId, from, to, archived -> sum[0] = sum[0].add(archived.posting().amount()));
+        return sum[0];
+    }
+
+    // Deletes every segment and its registration, for archive-clear-on-empty-schema and tests
+    public void clear() {
+        segments.clear();
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.toList()) {
+                if (file.getFileName().toString().endsWith(SEGMENT_SUFFIX)) {
+                    Files.delete(file);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot clear the journal archive", e);
+        }
+        jdbcTemplate.update("DELETE FROM journal_archive_month");
+        reportLoaded();
+    }
+
+    private Path segmentFile(YearMonth month) {
+        return directory.resolve(JournalRepository.partitionName(month) + SEGMENT_SUFFIX);
+    }
+
+    private static JournalEntry.Posting toPosting(ResultSet rs) throws SQLException {
+        long walletId = rs.getLong("wallet_id");
+        boolean walletless = rs.wasNull();
+        long counterpart = rs.getLong("counterpart_wallet_id");
+        boolean noCounterpart = rs.wasNull();
+        return new JournalEntry.Posting(
+                rs.getString("reference"),
+                LedgerAccount.valueOf(rs.getString("account")),
+                walletless ? null : walletId,
+                TransactionType.valueOf(rs.getString("type")),
+                rs.getBigDecimal("amount"),
+                noCounterpart ? null : counterpart,
+                rs.getBigDecimal("balance_after"));
+    }
+
+    // A posting read back from a segment, with its place in the journal
+    public record ArchivedPosting(long journalId, int leg, Instant postedAt, JournalEntry.Posting posting) {
+    }
+}
@@ -0,0 +1,373 @@
+package com.hng.wallet_service.archive;
+
+import com.hng.wallet_service.models.JournalEntry;
+import com.hng.wallet_service.models.enums.LedgerAccount;
+import com.hng.wallet_service.models.enums.TransactionType;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * One archived month of the journal, in an immutable file. Postings are clustered
+ * by wallet and cut into blocks of a single wallet each, in (posted_at, journal_id,
+ * leg) order, and every block is deflated on its own. A sparse index at the end
+ * holds each block's wallet, first posting and position:
+ * [magic, version, month][blocks...][index][index offset, block count, CRC32C of index, magic].
+ * Readers map the whole file and inflate only the blocks a query reaches.
+ */
+final class JournalSegment {
+
+    private static final int MAGIC = 0x4A534547; // "JSEG"
+    private static final short VERSION = 1;
+    private static final int HEADER_BYTES = Integer.BYTES + Short.BYTES + Integer.BYTES;
+    private static final int FOOTER_BYTES = Long.BYTES + 3 * Integer.BYTES;
+    private static final int INDEX_ENTRY_BYTES = 3 * Long.BYTES + Short.BYTES + 4 * Integer.BYTES;
+    private static final int BLOCK_POSTINGS = 256;
+    private static final LedgerAccount[] ACCOUNTS = LedgerAccount.values();
+    private static final TransactionType[] TYPES = TransactionType.values();
+
+    private final YearMonth month;
+    private final MappedByteBuffer data;
+
+    // The sparse index, one slot per block; postings without a wallet cluster under 0
+    private final long[] walletIds;
+    private final long[] firstPostedAt;
+    private final long[] firstJournalIds;
+    private final int[] firstLegs;
+    private final int[] offsets;
+    private final int[] compressedLengths;
+    private final int[] rawLengths;
+    private final int[] counts;
+
+    private JournalSegment(YearMonth month, MappedByteBuffer data, int blocks) {
+        this.month = month;
+        this.data = data;
+        walletIds = new long[blocks];
+        firstPostedAt = new long[blocks];
+        firstJournalIds = new long[blocks];
+        firstLegs = new int[blocks];
+        offsets = new int[blocks];
+        compressedLengths = new int[blocks];
+        rawLengths = new int[blocks];
+        counts = new int[blocks];
+    }
+
+    static JournalSegment open(Path path, YearMonth month) throws IOException {
+        MappedByteBuffer data;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE || channel.size() < HEADER_BYTES + FOOTER_BYTES) {
+                throw new IOException("Journal segment " + path + " has an invalid size of " + channel.size() + " bytes");
+            }
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        if (data.getInt(0) != MAGIC || data.getShort(Integer.BYTES) != VERSION
+                || data.getInt(Integer.BYTES + Short.BYTES) != month.getYear() * 100 + month.getMonthValue()) {
+            throw new IOException("Journal segment " + path + " does not hold " + month);
+        }
+        int footer = data.capacity() - FOOTER_BYTES;
+        long indexOffset = data.getLong(footer);
+        int blocks = data.getInt(footer + Long.BYTES);
+        int checksum = data.getInt(footer + Long.BYTES + Integer.BYTES);
+        if (data.getInt(footer + Long.BYTES + 2 * Integer.BYTES) != MAGIC
+                || indexOffset != footer - (long) blocks * INDEX_ENTRY_BYTES) {
+            throw new IOException("Journal segment " + path + " is truncated");
+        }
+        ByteBuffer index = data.slice((int) indexOffset, blocks * INDEX_ENTRY_BYTES);
+        CRC32C crc = new CRC32C();
+        crc.update(index.duplicate());
+        if ((int) crc.getValue() != checksum) {
+            throw new IOException("Journal segment " + path + " has a corrupt index");
+        }
+
+        JournalSegment segment = new JournalSegment(month, data, blocks);
+        for (int i = 0; i < blocks; i++) {
+            segment.walletIds[i] = index.getLong();
+            segment.firstPostedAt[i] = index.getLong();
+            segment.firstJournalIds[i] = index.getLong();
+            segment.firstLegs[i] = index.getShort();
+            segment.offsets[i] = index.getInt();
+            segment.compressedLengths[i] = index.getInt();
+            segment.rawLengths[i] = index.getInt();
+            segment.counts[i] = index.getInt();
+        }
+        return segment;
+    }
+
+    YearMonth month() {
+        return month;
+    }
+
+    /**
+     * Adds the wallet's postings strictly before the given one to {@code out},
+     * newest first, until it holds {@code limit}. A null postedAt starts from the
+     * newest posting in the segment.
+     */
+    void readBefore(long walletId, Instant postedAt, long journalId, int leg, int limit,
+            List<JournalArchive.ArchivedPosting> out) {
+        long before = postedAt == null ? Long.MAX_VALUE : toMicros(postedAt);
+        int first = firstBlock(walletId);
+        for (int block = lastBlock(walletId, first) - 1; block >= first && out.size() < limit; block--) {
+            if (compare(firstPostedAt[block], firstJournalIds[block], firstLegs[block], before, journalId, leg) >= 0) {
+                continue;
+            }
+            List<JournalArchive.ArchivedPosting> postings = decode(block);
+            for (int i = postings.size() - 1; i >= 0 && out.size() < limit; i--) {
+                JournalArchive.ArchivedPosting posting = postings.get(i);
+                if (compare(toMicros(posting.postedAt()), posting.journalId(), posting.leg(), before, journalId, leg) < 0) {
+                    out.add(posting);
+                }
+            }
+        }
+    }
+
+    // The wallet's postings from 'from' (inclusive) to 'to' (exclusive), oldest first
+    void readRange(long walletId, Instant from, Instant to, Consumer<JournalArchive.ArchivedPosting> consumer) {
+        long fromMicros = toMicros(from);
+        long toMicros = toMicros(to);
+        int first = firstBlock(walletId);
+        int last = lastBlock(walletId, first);
+        for (int block = first; block < last && firstPostedAt[block] < toMicros; block++) {
+            if (block + 1 < last && firstPostedAt[block + 1] < fromMicros) {
+                continue;
+            }
+            for (JournalArchive.ArchivedPosting posting : decode(block)) {
+                long micros = toMicros(posting.postedAt());
+                if (micros >= fromMicros && micros < toMicros) {
+                    consumer.accept(posting);
+                }
+            }
+        }
+    }
+
+    // First block of the wallet, or where it would be
+    private int firstBlock(long walletId) {
+        int low = 0;
+        int high = walletIds.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (walletIds[mid] < walletId) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private int lastBlock(long walletId, int first) {
+        int last = first;
+        while (last < walletIds.length && walletIds[last] == walletId) {
+            last++;
+        }
+        return last;
+    }
+
+    private List<JournalArchive.ArchivedPosting> decode(int block) {
+        byte[] raw = new byte[rawLengths[block]];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data.slice(offsets[block], compressedLengths[block]));
+            int inflated = 0;
+            while (inflated < raw.length && !inflater.finished()) {
+                int n = inflater.inflate(raw, inflated, raw.length - inflated);
+                if (n == 0 && inflater.needsInput()) {
+                    break;
+                }
+                inflated += n;
+            }
+            if (inflated != raw.length) {
+                throw new IllegalStateException("Journal segment for " + month + " has a truncated block " + block);
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Journal segment for " + month + " has a corrupt block " + block, e);
+        } finally {
+            inflater.end();
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(raw);
+        List<JournalArchive.ArchivedPosting> postings = new ArrayList<>(counts[block]);
+        for (int i = 0; i < counts[block]; i++) {
+            long journalId = buffer.getLong();
+            int leg = buffer.getShort();
+            Instant postedAt = fromMicros(buffer.getLong());
+            LedgerAccount account = ACCOUNTS[buffer.get()];
+            long walletId = buffer.getLong();
+            TransactionType type = TYPES[buffer.get()];
+            BigDecimal amount = BigDecimal.valueOf(buffer.getLong(), 2);
+            long counterpart = buffer.getLong();
+            BigDecimal balanceAfter = buffer.get() == 0 ? null : BigDecimal.valueOf(buffer.getLong(), 2);
+            byte[] reference = new byte[Short.toUnsignedInt(buffer.getShort())];
+            buffer.get(reference);
+            postings.add(new JournalArchive.ArchivedPosting(journalId, leg, postedAt, new JournalEntry.Posting(
+                    new String(reference, StandardCharsets.UTF_8), account, walletId == 0 ? null : walletId, type,
+                    amount, counterpart == 0 ? null : counterpart, balanceAfter)));
+        }
+        return postings;
+    }
+
+    private static int compare(long postedAt, long journalId, int leg, long otherPostedAt, long otherJournalId,
+            int otherLeg) {
+        int result = Long.compare(postedAt, otherPostedAt);
+        if (result == 0) {
+            result = Long.compare(journalId, otherJournalId);
+        }
+        return result != 0 ? result : Integer.compare(leg, otherLeg);
+    }
+
+    // Postgres keeps timestamps to the microsecond
+    static long toMicros(Instant instant) {
+        return Math.addExact(Math.multiplyExact(instant.getEpochSecond(), 1_000_000L), instant.getNano() / 1_000);
+    }
+
+    private static Instant fromMicros(long micros) {
+        return Instant.ofEpochSecond(Math.floorDiv(micros, 1_000_000L), Math.floorMod(micros, 1_000_000L) * 1_000L);
+    }
+
+    /**
+     * Writes a segment from postings handed over in (wallet, posted_at,
+     * journal_id, leg) order, wallet-less postings first. Nothing is readable
+     * until {@link #finish()} has written the index and forced the file to disk.
+     */
+    static final class Writer implements Closeable {
+
+        private final Path path;
+        private final DataOutputStream out;
+        private final Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        private final byte[] deflated = new byte[64 * 1024];
+        private final ByteArrayOutputStream blockBytes = new ByteArrayOutputStream(64 * 1024);
+        private final DataOutputStream block = new DataOutputStream(blockBytes);
+        private final ByteArrayOutputStream indexBytes = new ByteArrayOutputStream();
+        private final DataOutputStream index = new DataOutputStream(indexBytes);
+
+        private long offset = HEADER_BYTES;
+        private int blocks;
+        private long postings;
+        private int blockCount;
+        private long blockWallet;
+        private long previousWallet = Long.MIN_VALUE;
+
+        Writer(Path path, YearMonth month) throws IOException {
+            this.path = path;
+            out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path,
+                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE),
+                    64 * 1024));
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeInt(month.getYear() * 100 + month.getMonthValue());
+        }
+
+        void add(long journalId, int leg, Instant postedAt, JournalEntry.Posting posting) throws IOException {
+            long walletId = posting.walletId() == null ? 0 : posting.walletId();
+            if (walletId < previousWallet) {
+                throw new IllegalArgumentException("Postings must reach a journal segment clustered by wallet");
+            }
+            if (blockCount > 0 && (walletId != blockWallet || blockCount == BLOCK_POSTINGS)) {
+                flushBlock();
+            }
+            if (blockCount == 0) {
+                blockWallet = walletId;
+                index.writeLong(walletId);
+                index.writeLong(toMicros(postedAt));
+                index.writeLong(journalId);
+                index.writeShort(leg);
+            }
+            previousWallet = walletId;
+
+            byte[] reference = posting.reference().getBytes(StandardCharsets.UTF_8);
+            block.writeLong(journalId);
+            block.writeShort(leg);
+            block.writeLong(toMicros(postedAt));
+            block.writeByte(posting.account().ordinal());
+            block.writeLong(walletId);
+            block.writeByte(posting.type().ordinal());
+            block.writeLong(toMinor(posting.amount()));
+            block.writeLong(posting.counterpartWalletId() == null ? 0 : posting.counterpartWalletId());
+            if (posting.balanceAfter() == null) {
+                block.writeByte(0);
+            } else {
+                block.writeByte(1);
+                block.writeLong(toMinor(posting.balanceAfter()));
+            }
+            block.writeShort(reference.length);
+            block.write(reference);
+            blockCount++;
+            postings++;
+        }
+
+        // Returns the number of postings written
+        long finish() throws IOException {
+            if (blockCount > 0) {
+                flushBlock();
+            }
+            byte[] indexData = indexBytes.toByteArray();
+            CRC32C crc = new CRC32C();
+            crc.update(indexData);
+            out.write(indexData);
+            out.writeLong(offset);
+            out.writeInt(blocks);
+            out.writeInt((int) crc.getValue());
+            out.writeInt(MAGIC);
+            out.close();
+            if (offset + indexData.length + FOOTER_BYTES > Integer.MAX_VALUE) {
+                throw new IOException("Journal segment " + path + " is too large to map");
+            }
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+            return postings;
+        }
+
+        @Override
+        public void close() throws IOException {
+            deflater.end();
+            out.close();
+        }
+
+        private void flushBlock() throws IOException {
+            byte[] raw = blockBytes.toByteArray();
+            deflater.reset();
+            deflater.setInput(raw);
+            deflater.finish();
+            int compressed = 0;
+            while (!deflater.finished()) {
+                int n = deflater.deflate(deflated);
+                out.write(deflated, 0, n);
+                compressed += n;
+            }
+
+            index.writeInt((int) offset);
+            index.writeInt(compressed);
+            index.writeInt(raw.length);
+            index.writeInt(blockCount);
+            offset += compressed;
+            blocks++;
+            blockBytes.reset();
+            blockCount = 0;
+        }
+
+        private static long toMinor(BigDecimal amount) {
+            return amount.movePointRight(2).longValueExact();
+        }
+    }
+}
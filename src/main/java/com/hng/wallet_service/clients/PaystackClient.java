@@ -0,0 +1,141 @@
+package com.hng.wallet_service.clients;
+
+import com.hng.wallet_service.exceptions.PaymentProviderException;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.BufferingClientHttpRequestFactory;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.client.RestClientException;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * HTTP client for the Paystack API. Connections are pooled and kept alive by the
+ * JDK HttpClient, every call has connect and read timeouts, and a semaphore caps
+ * how many calls can be in flight so a slow Paystack can't tie up every request
+ * thread. Point paystack.base-url at a local stub to test against it.
+ */
+@Component
+public class PaystackClient {
+
+    @Value("${paystack.base-url:https://api.paystack.co}")
+    private String baseUrl;
+
+    @Value("${paystack.secret-key}")
+    private String secretKey;
+
+    @Value("${paystack.connect-timeout-ms:2000}")
+    private long connectTimeoutMs;
+
+    @Value("${paystack.read-timeout-ms:5000}")
+    private long readTimeoutMs;
+
+    @Value("${paystack.max-concurrent-calls:32}")
+    private int maxConcurrentCalls;
+
+    @Value("${paystack.bulkhead-wait-ms:200}")
+    private long bulkheadWaitMs;
+
+    private RestClient restClient;
+    private Semaphore bulkhead;
+
+    @PostConstruct
+    void init() {
+        HttpClient httpClient = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+                .build();
+        JdkClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory(httpClient);
+        requestFactory.setReadTimeout(Duration.ofMillis(readTimeoutMs));
+
+        // Buffered so requests carry a Content-Length instead of a chunked body
+        restClient = RestClient.builder()
+                .requestFactory(new BufferingClientHttpRequestFactory(requestFactory))
+                .baseUrl(baseUrl)
+                .defaultHeader(HttpHeaders.AUTHORIZATION, "Bearer " + secretKey)
+                .build();
+        bulkhead = new Semaphore(maxConcurrentCalls);
+    }
+
+    /**
+     * Starts a Paystack checkout and returns the URL the customer pays at.
+     */
+    public String initializeTransaction(String email, long amountInKobo, String reference) {
+        Map<String, Object> response = call(() -> restClient.post()
+                .uri("/transaction/initialize")
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(Map.of(
+                        "email", email,
+                        "amount", amountInKobo,
+                        "reference", reference))
+                .retrieve()
+                .body(Map.class));
+
+        Object data = response == null ? null : response.get("data");
+        if (!(data instanceof Map<?, ?> fields) || !(fields.get("authorization_url") instanceof String url)) {
+            throw new PaymentProviderException("Paystack did not return an authorization URL");
+        }
+        return url;
+    }
+
+    /**
+     * Looks up a transaction's status at Paystack ("success", "failed", "abandoned",
+     * "ongoing", ...). Returns null when Paystack has no transaction with the reference.
+     */
+    public String verifyTransaction(String reference) {
+        Map<String, Object> response = call(() -> {
+            try {
+                return restClient.get()
+                        .uri("/transaction/verify/{reference}", reference)
+                        .retrieve()
+                        .body(Map.class);
+            } catch (HttpClientErrorException.NotFound e) {
+                return null;
+            } catch (HttpClientErrorException.BadRequest e) {
+                // Paystack answers an unknown reference with a 400 "Transaction reference not found";
+                // any other 400 is an error, and leaves the deposit as it is
+                if (e.getResponseBodyAsString().toLowerCase().contains("reference not found")) {
+                    return null;
+                }
+                throw e;
+            }
+        });
+
+        if (response == null) {
+            return null;
+        }
+        Object data = response.get("data");
+        if (!(data instanceof Map<?, ?> fields) || !(fields.get("status") instanceof String status)) {
+            throw new PaymentProviderException("Paystack did not return a transaction status");
+        }
+        return status;
+    }
+
+    private <T> T call(Supplier<T> request) {
+        try {
+            if (!bulkhead.tryAcquire(bulkheadWaitMs, TimeUnit.MILLISECONDS)) {
+                throw new PaymentProviderException("Payment provider is busy, please retry shortly");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PaymentProviderException("Interrupted while waiting for the payment provider");
+        }
+
+        try {
+            return request.get();
+        } catch (RestClientException e) {
+            throw new PaymentProviderException("Payment provider request failed: " + e.getMessage());
+        } finally {
+            bulkhead.release();
+        }
+    }
+}
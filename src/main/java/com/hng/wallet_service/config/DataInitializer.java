@@ -1,16 +1,40 @@
 package com.hng.wallet_service.config;
 
+import com.hng.wallet_service.exceptions.WalletNotFoundException;
 import com.hng.wallet_service.services.TransactionService;
+import com.hng.wallet_service.services.WalletService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.stereotype.Component;
 
+import java.util.List;
+
 @Component
 @RequiredArgsConstructor
 public class DataInitializer implements CommandLineRunner {
 
+    private final WalletService walletService;
+
+    @Value("${wallet.hot-wallets.numbers:}")
+    private List<String> hotWalletNumbers;
+
+    @Value("${wallet.hot-wallets.stripes:16}")
+    private int hotWalletStripes;
+
     @Override
     public void run(String... args) throws Exception {
+        for (String walletNumber : hotWalletNumbers) {
+            if (walletNumber.isBlank()) {
+                continue;
+            }
+            try {
+                walletService.enableHotWallet(walletNumber.trim(), hotWalletStripes);
+                System.out.println("Hot wallet mode enabled for " + walletNumber + " with " + hotWalletStripes + " stripes");
+            } catch (WalletNotFoundException e) {
+                System.err.println("Cannot enable hot wallet mode: " + e.getMessage());
+            }
+        }
         System.out.println("Wallet Service Started!");
     }
 }
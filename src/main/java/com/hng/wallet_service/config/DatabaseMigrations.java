@@ -0,0 +1,200 @@
+package com.hng.wallet_service.config;
+
+import com.hng.wallet_service.models.enums.Permissions;
+import com.hng.wallet_service.repositories.JournalRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.YearMonth;
+
+/**
+ * Idempotent schema changes that Hibernate's ddl-auto can't express. Runs once
+ * the entity tables exist, before the application starts serving requests.
+ */
+@Component
+@DependsOn("entityManagerFactory")
+@RequiredArgsConstructor
+public class DatabaseMigrations {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final JournalRepository journalRepository;
+
+    @PostConstruct
+    public void migrate() {
+        migrateApiKeyPermissionsToBitmask();
+        createLedgerCheckpoint();
+        createWebhookInboxPendingIndex();
+        createPendingDepositIndex();
+        createWalletNumberBlockSequence();
+        createJournal();
+        dropSupersededTransactionIndexes();
+        createBalanceSnapshotTables();
+        createJournalArchiveTables();
+        resetForNewSchema();
+    }
+
+    // ApiKey.permissions used to be an @ElementCollection stored in api_key_permissions
+    private void migrateApiKeyPermissionsToBitmask() {
+        Boolean legacyTableExists = jdbcTemplate.queryForObject(
+                "SELECT to_regclass('api_key_permissions') IS NOT NULL", Boolean.class);
+        if (!Boolean.TRUE.equals(legacyTableExists)) {
+            return;
+        }
+
+        StringBuilder bitForName = new StringBuilder("CASE p.permissions");
+        for (Permissions permission : Permissions.values()) {
+            bitForName.append(" WHEN '").append(permission.name()).append("' THEN ").append(permission.bit());
+        }
+        bitForName.append(" ELSE 0 END");
+
+        int migrated = jdbcTemplate.update(
+                "UPDATE apikey a SET permissions_mask = COALESCE("
+                        + "(SELECT bit_or(" + bitForName + ") FROM api_key_permissions p WHERE p.api_key_id = a.id), 0) "
+                        + "WHERE a.permissions_mask IS NULL");
+        jdbcTemplate.execute("DROP TABLE api_key_permissions");
+
+        System.out.println("Migrated permissions of " + migrated + " API keys to bitmask column");
+    }
+
+    // Keeps polling for unprocessed webhook events cheap however large the inbox grows
+    private void createWebhookInboxPendingIndex() {
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_webhook_inbox_pending "
+                + "ON webhook_inbox (available_at, id) WHERE processed_at IS NULL");
+        // Finds the wallet's older events a claim has to wait for
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_webhook_inbox_pending_wallet "
+                + "ON webhook_inbox (wallet_id, id) WHERE processed_at IS NULL");
+    }
+
+    // Covers only deposits still awaiting Paystack, so the reconciler's scan stays small
+    private void createPendingDepositIndex() {
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_transactions_pending_deposits "
+                + "ON transactions (created_at, id) INCLUDE (reference) "
+                + "WHERE status = 'PENDING' AND type = 'DEPOSIT'");
+    }
+
+    // Hands out blocks of wallet numbers to WalletNumberAllocator
+    private void createWalletNumberBlockSequence() {
+        jdbcTemplate.execute("CREATE SEQUENCE IF NOT EXISTS wallet_number_block_seq");
+    }
+
+    /**
+     * journal_postings holds every movement of money as double-entry postings,
+     * range-partitioned by month of posted_at. Triggers make it append-only and
+     * reject any INSERT whose entries don't sum to zero; JournalRepository always
+     * inserts whole entries in one statement. Deposits and transfers settled
+     * before the journal existed are copied in when it is created.
+     */
+    private void createJournal() {
+        Boolean journalExists = jdbcTemplate.queryForObject(
+                "SELECT to_regclass('journal_postings') IS NOT NULL", Boolean.class);
+        if (Boolean.TRUE.equals(journalExists)) {
+            return;
+        }
+
+        jdbcTemplate.execute("CREATE TABLE journal_postings ("
+                + "journal_id BIGINT NOT NULL, leg SMALLINT NOT NULL, reference VARCHAR(255) NOT NULL, "
+                + "account VARCHAR(16) NOT NULL, wallet_id BIGINT, type VARCHAR(16) NOT NULL, "
+                + "amount NUMERIC(19, 2) NOT NULL, counterpart_wallet_id BIGINT, balance_after NUMERIC(19, 2), "
+                + "posted_at TIMESTAMPTZ NOT NULL, "
+                + "PRIMARY KEY (journal_id, leg, posted_at), "
+                + "CHECK ((account = 'WALLET') = (wallet_id IS NOT NULL))"
+                + ") PARTITION BY RANGE (posted_at)");
+        // History pages, statements and point-in-time balances
+        jdbcTemplate.execute("CREATE INDEX idx_journal_postings_wallet "
+                + "ON journal_postings (wallet_id, posted_at DESC, journal_id DESC, leg DESC) "
+                + "INCLUDE (type, amount, balance_after) WHERE wallet_id IS NOT NULL");
+        jdbcTemplate.execute("CREATE INDEX idx_journal_postings_reference ON journal_postings (reference)");
+        // Day ranges for the balance snapshot job
+        jdbcTemplate.execute("CREATE INDEX idx_journal_postings_posted_brin ON journal_postings USING brin (posted_at)");
+
+        jdbcTemplate.execute("CREATE OR REPLACE FUNCTION journal_postings_balanced() RETURNS trigger "
+                + "LANGUAGE plpgsql AS $$ DECLARE unbalanced BIGINT; BEGIN "
+                + "SELECT journal_id INTO unbalanced FROM new_postings GROUP BY journal_id HAVING sum(amount) <> 0 LIMIT 1; "
+                + "IF unbalanced IS NOT NULL THEN "
+                + "RAISE EXCEPTION 'Journal entry % does not balance', unbalanced USING ERRCODE = 'check_violation'; "
+                + "END IF; RETURN NULL; END $$");
+        jdbcTemplate.execute("CREATE TRIGGER journal_postings_balanced AFTER INSERT ON journal_postings "
+                + "REFERENCING NEW TABLE AS new_postings FOR EACH STATEMENT EXECUTE FUNCTION journal_postings_balanced()");
+        jdbcTemplate.execute("CREATE OR REPLACE FUNCTION journal_postings_append_only() RETURNS trigger "
+                + "LANGUAGE plpgsql AS $$ BEGIN "
+                + "RAISE EXCEPTION 'journal_postings is append-only' USING ERRCODE = 'restrict_violation'; "
+                + "END $$");
+        jdbcTemplate.execute("CREATE TRIGGER journal_postings_append_only BEFORE UPDATE OR DELETE ON journal_postings "
+                + "FOR EACH ROW EXECUTE FUNCTION journal_postings_append_only()");
+
+        Timestamp firstSettled = jdbcTemplate.queryForObject(
+                "SELECT min(created_at) FROM transactions WHERE status = 'SUCCESS'", Timestamp.class);
+        if (firstSettled == null) {
+            return;
+        }
+        YearMonth current = JournalRepository.monthOf(Instant.now());
+        for (YearMonth month = JournalRepository.monthOf(firstSettled.toInstant());
+                !month.isAfter(current); month = month.plusMonths(1)) {
+            journalRepository.createPartition(month);
+        }
+
+        // A transfer's two legs become one entry, identified by the id of its _OUT
+        // row; a deposit is credited from the Paystack account
+        String legacyTransfers = "FROM transactions o JOIN transactions i ON i.reference = left(o.reference, -4) || '_IN' "
+                + "WHERE o.type = 'TRANSFER_OUT' AND o.status = 'SUCCESS' AND o.reference LIKE '%\\_OUT'";
+        String legacyDeposits = "FROM transactions d WHERE d.type = 'DEPOSIT' AND d.status = 'SUCCESS'";
+        int copied = jdbcTemplate.update("INSERT INTO journal_postings "
+                + "(journal_id, leg, reference, account, wallet_id, type, amount, counterpart_wallet_id, posted_at) "
+                + "SELECT o.id, 0, o.reference, 'WALLET', o.wallet_id, 'TRANSFER_OUT', -o.amount, "
+                + "o.counterpart_wallet_id, o.created_at " + legacyTransfers
+                + " UNION ALL SELECT o.id, 1, i.reference, 'WALLET', i.wallet_id, 'TRANSFER_IN', i.amount, "
+                + "i.counterpart_wallet_id, o.created_at " + legacyTransfers
+                + " UNION ALL SELECT d.id, 0, d.reference, 'WALLET', d.wallet_id, 'DEPOSIT', d.amount, NULL, d.created_at "
+                + legacyDeposits
+                + " UNION ALL SELECT d.id, 1, d.reference, 'PAYSTACK', NULL, 'DEPOSIT', -d.amount, NULL, d.created_at "
+                + legacyDeposits);
+        System.out.println("Copied " + copied + " postings of settled transactions into the journal");
+    }
+
+    // History and balances are read from journal_postings now
+    private void dropSupersededTransactionIndexes() {
+        jdbcTemplate.execute("DROP INDEX IF EXISTS idx_transactions_wallet_created");
+        jdbcTemplate.execute("DROP INDEX IF EXISTS idx_transactions_wallet_posted");
+        jdbcTemplate.execute("DROP INDEX IF EXISTS idx_transactions_posted_brin");
+    }
+
+    // Closing balance per wallet for each UTC day it had postings, and the last day snapshotted
+    private void createBalanceSnapshotTables() {
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS wallet_balance_snapshot ("
+                + "wallet_id BIGINT NOT NULL, snapshot_date DATE NOT NULL, closing_balance NUMERIC(19, 2) NOT NULL, "
+                + "PRIMARY KEY (wallet_id, snapshot_date))");
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS balance_snapshot_checkpoint (id INT PRIMARY KEY, last_date DATE)");
+        jdbcTemplate.execute("INSERT INTO balance_snapshot_checkpoint (id, last_date) VALUES (1, NULL) "
+                + "ON CONFLICT (id) DO NOTHING");
+    }
+
+    // Months moved to the journal archive, and the newest archived month each instance has loaded
+    private void createJournalArchiveTables() {
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS journal_archive_month ("
+                + "month DATE PRIMARY KEY, postings BIGINT NOT NULL, archived_at TIMESTAMPTZ NOT NULL)");
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS journal_archive_reader ("
+                + "instance_id VARCHAR(64) PRIMARY KEY, newest_month DATE, seen_at TIMESTAMPTZ NOT NULL)");
+    }
+
+    // These tables outlive a schema that ddl-auto recreated: what they hold about wallets
+    // that are gone must not carry over to new wallets reusing the ids. The journal archive
+    // is the only copy of its months, so JournalArchive decides about it separately.
+    private void resetForNewSchema() {
+        Boolean noWallets = jdbcTemplate.queryForObject("SELECT NOT EXISTS (SELECT 1 FROM wallet)", Boolean.class);
+        if (Boolean.TRUE.equals(noWallets)) {
+            jdbcTemplate.execute("TRUNCATE journal_postings, wallet_balance_snapshot");
+            jdbcTemplate.update("UPDATE balance_snapshot_checkpoint SET last_date = NULL WHERE id = 1");
+        }
+    }
+
+    // Last journal sequence number the ledger engine has replicated into the tables
+    private void createLedgerCheckpoint() {
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS ledger_checkpoint (id INT PRIMARY KEY, last_seq BIGINT NOT NULL)");
+        jdbcTemplate.execute("INSERT INTO ledger_checkpoint (id, last_seq) VALUES (1, 0) ON CONFLICT (id) DO NOTHING");
+    }
+}
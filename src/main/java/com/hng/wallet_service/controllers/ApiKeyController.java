@@ -51,9 +51,25 @@ public class ApiKeyController {
                                 "expires_at", response.expiresAt().toString());
         }
 
+        @PostMapping("/revoke")
+        public Map<String, String> revokeApiKey(
+                        @RequestBody RevokeRequest request,
+                        Authentication authentication) {
+                Long userId = authHelper.getUserId(authentication);
+
+                apiKeyService.revokeApiKey(userId, request.keyId());
+
+                return Map.of(
+                                "status", "success",
+                                "message", "API key revoked");
+        }
+
         public record CreateApiKeyRequest(String name, List<Permissions> permissions, String expiry) {
         }
 
         public record RolloverRequest(Long expiredKeyId, String expiry) {
         }
+
+        public record RevokeRequest(Long keyId) {
+        }
 }
@@ -1,19 +1,31 @@
 package com.hng.wallet_service.controllers;
 
+import com.hng.wallet_service.exceptions.InvalidAmountException;
 import com.hng.wallet_service.models.Transaction;
 import com.hng.wallet_service.models.Wallet;
+import com.hng.wallet_service.services.BalanceHistoryService;
+import com.hng.wallet_service.services.IdempotencyService;
 import com.hng.wallet_service.services.PaystackService;
+import com.hng.wallet_service.services.StatementExportService;
 import com.hng.wallet_service.services.TransferService;
 import com.hng.wallet_service.services.WalletService;
 import com.hng.wallet_service.services.TransactionService;
+import com.hng.wallet_service.services.WebhookInboxService;
 import com.hng.wallet_service.utils.AuthenticationHelper;
 import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
 import java.util.Map;
 
 @RestController
@@ -25,22 +37,29 @@ public class WalletController {
     private final TransferService transferService;
     private final WalletService walletService;
     private final TransactionService transactionService;
+    private final StatementExportService statementExportService;
+    private final BalanceHistoryService balanceHistoryService;
+    private final IdempotencyService idempotencyService;
+    private final WebhookInboxService webhookInboxService;
     private final AuthenticationHelper authHelper;
 
     @PostMapping("/deposit")
     @PreAuthorize("hasAuthority('ROLE_USER') or hasAuthority('SCOPE_DEPOSIT')")
     public Map<String, String> deposit(
             @RequestBody DepositRequest request,
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
             Authentication authentication) {
         Long userId = authHelper.getUserId(authentication);
-        return paystackService.initializeDeposit(userId, request.amount());
+        return idempotencyService.execute(userId, idempotencyKey, "deposit:" + request.amount(),
+                () -> paystackService.initializeDeposit(userId, request.amount()));
     }
 
     @PostMapping("/paystack/webhook")
     public ResponseEntity<Map<String, Boolean>> paystackWebhook(
             @RequestHeader("x-paystack-signature") String signature,
-            @RequestBody String payload) {
-        paystackService.handleWebhook(signature, payload);
+            @RequestBody byte[] payload) {
+        // Stored for WebhookInboxService to apply; Paystack only needs the 200
+        webhookInboxService.accept(signature, payload);
         return ResponseEntity.ok(Map.of("status", true));
     }
 
@@ -59,13 +78,52 @@ public class WalletController {
     @PreAuthorize("hasAuthority('ROLE_USER') or hasAuthority('SCOPE_TRANSFER')")
     public Map<String, String> transfer(
             @RequestBody TransferRequest request,
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
             Authentication authentication) {
         Long userId = authHelper.getUserId(authentication);
-        transferService.transfer(userId, request.walletNumber(), request.amount());
+        Map<String, String> completed = Map.of(
+                "status", "success",
+                "message", "Transfer completed");
+        // A retry after a crash finds out from the journal whether the transfer went through
+        return idempotencyService.execute(userId, idempotencyKey,
+                "transfer:" + request.walletNumber() + ":" + request.amount(), "TRANSFER",
+                reference -> {
+                    transferService.transfer(userId, request.walletNumber(), request.amount(), reference);
+                    return completed;
+                },
+                reference -> transferService.isPosted(reference) ? completed : null);
+    }
+
+    @PostMapping("/transfer/batch")
+    @PreAuthorize("hasAuthority('ROLE_USER') or hasAuthority('SCOPE_TRANSFER')")
+    public Map<String, Object> transferBatch(
+            @RequestBody BatchTransferRequest request,
+            Authentication authentication) {
+        Long userId = authHelper.getUserId(authentication);
+        java.util.List<TransferService.BatchTransferResult> results = transferService.transferBatch(
+                userId,
+                request.transfers() == null ? null : request.transfers().stream()
+                        .map(t -> new TransferService.BatchTransferItem(t.walletNumber(), t.amount()))
+                        .toList());
+
+        long succeeded = results.stream().filter(r -> "success".equals(r.status())).count();
 
         return Map.of(
                 "status", "success",
-                "message", "Transfer completed");
+                "succeeded", succeeded,
+                "failed", results.size() - succeeded,
+                "results", results.stream()
+                        .map(r -> {
+                            Map<String, Object> map = new java.util.HashMap<>();
+                            map.put("index", r.index());
+                            map.put("wallet_number", r.walletNumber());
+                            map.put("amount", r.amount());
+                            map.put("status", r.status());
+                            map.put("reference", r.reference());
+                            map.put("message", r.message());
+                            return map;
+                        })
+                        .toList());
     }
 
     @GetMapping("/balance")
@@ -74,25 +132,76 @@ public class WalletController {
         Long userId = authHelper.getUserId(authentication);
         Wallet wallet = walletService.getWalletByUserId(userId);
 
-        return Map.of("balance", wallet.getBalance());
+        return Map.of("balance", walletService.getBalance(wallet.getId()));
+    }
+
+    @GetMapping("/balance/at")
+    @PreAuthorize("hasAuthority('ROLE_USER') or hasAuthority('SCOPE_READ')")
+    public Map<String, Object> getBalanceAt(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant timestamp,
+            Authentication authentication) {
+        Long userId = authHelper.getUserId(authentication);
+        Wallet wallet = walletService.getWalletByUserId(userId);
+
+        return Map.of(
+                "balance", balanceHistoryService.balanceAt(wallet.getId(), timestamp),
+                "as_of", timestamp.toString());
     }
 
     @GetMapping("/transactions")
     @PreAuthorize("hasAuthority('ROLE_USER') or hasAuthority('SCOPE_READ')")
-    public java.util.List<Map<String, Object>> getTransactions(Authentication authentication) {
+    public Map<String, Object> getTransactions(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit,
+            Authentication authentication) {
         Long userId = authHelper.getUserId(authentication);
         Wallet wallet = walletService.getWalletByUserId(userId);
-        java.util.List<Transaction> transactions = transactionService.getTransactionHistory(wallet.getId());
+        TransactionService.TransactionPage page = transactionService.getTransactionPage(wallet.getId(), cursor, limit);
 
-        return transactions.stream()
+        java.util.List<Map<String, Object>> transactions = page.transactions().stream()
                 .map(txn -> {
                     Map<String, Object> map = new java.util.HashMap<>();
                     map.put("type", txn.getType().name().toLowerCase());
                     map.put("amount", txn.getAmount());
                     map.put("status", txn.getStatus().name().toLowerCase());
+                    map.put("created_at", txn.getCreatedAt().toString());
                     return map;
                 })
                 .collect(java.util.stream.Collectors.toList());
+
+        Map<String, Object> response = new java.util.HashMap<>();
+        response.put("transactions", transactions);
+        response.put("next_cursor", page.nextCursor());
+        return response;
+    }
+
+    @GetMapping("/statement")
+    @PreAuthorize("hasAuthority('ROLE_USER') or hasAuthority('SCOPE_READ')")
+    public ResponseEntity<StreamingResponseBody> exportStatement(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(defaultValue = "ndjson") String format,
+            Authentication authentication) {
+        if (to.isBefore(from)) {
+            throw new InvalidAmountException("'to' must not be before 'from'");
+        }
+        StatementExportService.StatementFormat statementFormat = StatementExportService.StatementFormat.parse(format);
+        Long userId = authHelper.getUserId(authentication);
+        Wallet wallet = walletService.getWalletByUserId(userId);
+
+        // Dates are whole UTC days, 'to' inclusive
+        Instant start = from.atStartOfDay(ZoneOffset.UTC).toInstant();
+        Instant end = to.plusDays(1).atStartOfDay(ZoneOffset.UTC).toInstant();
+
+        boolean csv = statementFormat == StatementExportService.StatementFormat.CSV;
+        String filename = "statement_" + wallet.getWalletNumber() + "_" + from + "_" + to + (csv ? ".csv" : ".ndjson");
+
+        return ResponseEntity.ok()
+                .contentType(csv ? MediaType.parseMediaType("text/csv") : MediaType.APPLICATION_NDJSON)
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"")
+                .header("X-Opening-Balance", balanceHistoryService.balanceAt(wallet.getId(), start).toPlainString())
+                .header("X-Closing-Balance", balanceHistoryService.balanceAt(wallet.getId(), end).toPlainString())
+                .body(out -> statementExportService.export(wallet.getId(), start, end, statementFormat, out));
     }
 
     public record DepositRequest(BigDecimal amount) {
@@ -100,4 +209,7 @@ public class WalletController {
 
     public record TransferRequest(String walletNumber, BigDecimal amount) {
     }
+
+    public record BatchTransferRequest(java.util.List<TransferRequest> transfers) {
+    }
 }
@@ -0,0 +1,23 @@
+package com.hng.wallet_service.dto;
+
+import com.hng.wallet_service.models.enums.TransactionStatus;
+import com.hng.wallet_service.models.enums.TransactionType;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class TransactionSummaryDTO {
+    // Journal entry and leg, the position of the posting in the journal
+    private Long id;
+    private Integer leg;
+    private TransactionType type;
+    private BigDecimal amount;
+    private TransactionStatus status;
+    private Instant createdAt;
+}
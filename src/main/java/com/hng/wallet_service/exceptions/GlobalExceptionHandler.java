@@ -125,6 +125,62 @@ public class GlobalExceptionHandler {
                 return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(error);
         }
 
+        @ExceptionHandler(InvalidIdempotencyKeyException.class)
+        public ResponseEntity<ErrorResponseDTO> handleInvalidIdempotencyKey(
+                        InvalidIdempotencyKeyException ex,
+                        HttpServletRequest request) {
+                ErrorResponseDTO error = ErrorResponseDTO.builder()
+                                .timestamp(LocalDateTime.now())
+                                .status(HttpStatus.BAD_REQUEST.value())
+                                .error("Bad Request")
+                                .message(ex.getMessage())
+                                .path(request.getRequestURI())
+                                .build();
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(error);
+        }
+
+        @ExceptionHandler(IdempotencyConflictException.class)
+        public ResponseEntity<ErrorResponseDTO> handleIdempotencyConflict(
+                        IdempotencyConflictException ex,
+                        HttpServletRequest request) {
+                ErrorResponseDTO error = ErrorResponseDTO.builder()
+                                .timestamp(LocalDateTime.now())
+                                .status(HttpStatus.CONFLICT.value())
+                                .error("Conflict")
+                                .message(ex.getMessage())
+                                .path(request.getRequestURI())
+                                .build();
+                return ResponseEntity.status(HttpStatus.CONFLICT).body(error);
+        }
+
+        @ExceptionHandler(TransferLimitExceededException.class)
+        public ResponseEntity<ErrorResponseDTO> handleTransferLimitExceeded(
+                        TransferLimitExceededException ex,
+                        HttpServletRequest request) {
+                ErrorResponseDTO error = ErrorResponseDTO.builder()
+                                .timestamp(LocalDateTime.now())
+                                .status(HttpStatus.TOO_MANY_REQUESTS.value())
+                                .error("Too Many Requests")
+                                .message(ex.getMessage())
+                                .path(request.getRequestURI())
+                                .build();
+                return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(error);
+        }
+
+        @ExceptionHandler(PaymentProviderException.class)
+        public ResponseEntity<ErrorResponseDTO> handlePaymentProvider(
+                        PaymentProviderException ex,
+                        HttpServletRequest request) {
+                ErrorResponseDTO error = ErrorResponseDTO.builder()
+                                .timestamp(LocalDateTime.now())
+                                .status(HttpStatus.SERVICE_UNAVAILABLE.value())
+                                .error("Service Unavailable")
+                                .message(ex.getMessage())
+                                .path(request.getRequestURI())
+                                .build();
+                return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(error);
+        }
+
         @ExceptionHandler(RuntimeException.class)
         public ResponseEntity<ErrorResponseDTO> handleRuntimeException(
                         RuntimeException ex,
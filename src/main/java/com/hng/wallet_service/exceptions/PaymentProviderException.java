@@ -0,0 +1,11 @@
+package com.hng.wallet_service.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class PaymentProviderException extends RuntimeException {
+    public PaymentProviderException(String message) {
+        super(message);
+    }
+}
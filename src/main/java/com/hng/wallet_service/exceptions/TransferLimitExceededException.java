@@ -0,0 +1,11 @@
+package com.hng.wallet_service.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.TOO_MANY_REQUESTS)
+public class TransferLimitExceededException extends RuntimeException {
+    public TransferLimitExceededException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,283 @@
+package com.hng.wallet_service.ledger;
+
+import com.hng.wallet_service.exceptions.InsufficientBalanceException;
+import com.hng.wallet_service.exceptions.WalletNotFoundException;
+import com.hng.wallet_service.models.enums.TransactionType;
+import com.hng.wallet_service.repositories.JournalRepository;
+import com.hng.wallet_service.repositories.WalletRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory balance authority for the ledger engine mode. Postings queue on a
+ * bounded ring and are applied by a single writer thread: each one is checked
+ * against the in-memory balances, appended to the journal and applied, and the
+ * callers of a drained run are released after one journal flush. Postgres is
+ * brought up to date asynchronously by {@link LedgerReplicator}; on startup the
+ * replicated tables serve as the snapshot and the journal is replayed past it.
+ */
+@Component
+@DependsOn("databaseMigrations")
+@RequiredArgsConstructor
+public class LedgerEngine {
+
+    private static final int MAX_DRAIN = 4096;
+
+    private final WalletRepository walletRepository;
+    private final JournalRepository journalRepository;
+    private final LedgerReplicator replicator;
+
+    @Value("${wallet.ledger.engine.enabled:false}")
+    private boolean enabled;
+
+    @Value("${wallet.ledger.journal-dir:ledger-journal}")
+    private String journalDir;
+
+    @Value("${wallet.ledger.segment-bytes:67108864}")
+    private int segmentBytes;
+
+    @Value("${wallet.ledger.ring-size:65536}")
+    private int ringSize;
+
+    @Value("${wallet.ledger.fsync:true}")
+    private boolean fsync;
+
+    // Balances in kobo, written only by the writer thread
+    private final Map<Long, Long> balances = new ConcurrentHashMap<>();
+    // References applied here but not yet replicated, so not yet in the journal
+    private final Set<String> pendingReferences = ConcurrentHashMap.newKeySet();
+
+    private BlockingQueue<Command> ring;
+    private LedgerJournal journal;
+    private Thread writer;
+    private volatile boolean running;
+    private long lastSeq;
+
+    @PostConstruct
+    void start() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        ring = new ArrayBlockingQueue<>(ringSize);
+        journal = new LedgerJournal(Path.of(journalDir), segmentBytes);
+
+        long checkpoint = replicator.loadCheckpoint();
+        List<LedgerReplicator.JournaledPosting> unreplicated = new ArrayList<>();
+        lastSeq = journal.replay(checkpoint, (seq, entries) -> {
+            for (Map.Entry<Long, Long> delta : deltas(entries).entrySet()) {
+                balances.put(delta.getKey(), balanceOf(delta.getKey(), true) + delta.getValue());
+            }
+            entries.forEach(entry -> pendingReferences.add(entry.reference()));
+            unreplicated.add(new LedgerReplicator.JournaledPosting(seq, entries));
+        });
+
+        replicator.start(unreplicated, this::onReplicated);
+        running = true;
+        writer = new Thread(this::run, "ledger-writer");
+        writer.setDaemon(true);
+        writer.start();
+        System.out.println("Ledger engine started at sequence " + lastSeq + ", replayed "
+                + unreplicated.size() + " unreplicated postings from " + journalDir);
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        running = false;
+        if (writer != null) {
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+            journal.close();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Posts the entries atomically and blocks until they are durable in the journal.
+     * Throws {@link InsufficientBalanceException} if any wallet would go negative.
+     */
+    public void post(List<LedgerEntry> entries) {
+        if (!running) {
+            throw new IllegalStateException("Ledger engine is not running");
+        }
+        Command command = new Command(entries, new CompletableFuture<>());
+        try {
+            ring.put(command);
+            command.result().join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while posting to the ledger", e);
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    // Journaled here but not yet replicated to Postgres
+    public boolean isPending(String reference) {
+        return pendingReferences.contains(reference);
+    }
+
+    public BigDecimal getBalance(Long walletId) {
+        Long balance = balances.get(walletId);
+        if (balance != null) {
+            return LedgerEntry.fromMinor(balance);
+        }
+        // Never touched by the engine, so the table is current
+        return walletRepository.findBalanceById(walletId)
+                .orElseThrow(() -> new WalletNotFoundException("Wallet not found: " + walletId));
+    }
+
+    private void run() {
+        List<Command> batch = new ArrayList<>();
+        List<Command> accepted = new ArrayList<>();
+        List<LedgerReplicator.JournaledPosting> postings = new ArrayList<>();
+        while (running || !ring.isEmpty()) {
+            try {
+                Command first = ring.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                ring.drainTo(batch, MAX_DRAIN - 1);
+                Set<String> existingReferences;
+                try {
+                    existingReferences = findExistingReferences(batch);
+                } catch (RuntimeException e) {
+                    batch.forEach(command -> command.result().completeExceptionally(e));
+                    continue;
+                }
+
+                for (Command command : batch) {
+                    try {
+                        LedgerReplicator.JournaledPosting posting = apply(command.entries(), existingReferences);
+                        if (posting != null) {
+                            postings.add(posting);
+                        }
+                        accepted.add(command);
+                    } catch (RuntimeException e) {
+                        command.result().completeExceptionally(e);
+                    }
+                }
+
+                if (fsync) {
+                    journal.force();
+                }
+                replicator.enqueue(postings);
+                accepted.forEach(command -> command.result().complete(null));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (RuntimeException e) {
+                // The journal can no longer be trusted to hold what memory holds: stop
+                // taking postings so a restart can rebuild from what is on disk
+                System.err.println("Ledger engine stopped after journal failure: " + e.getMessage());
+                running = false;
+                batch.forEach(command -> command.result().completeExceptionally(e));
+                ring.forEach(command -> command.result().completeExceptionally(e));
+            } finally {
+                batch.clear();
+                accepted.clear();
+                postings.clear();
+            }
+        }
+    }
+
+    // Returns null when the posting is a deposit that has already been applied
+    private LedgerReplicator.JournaledPosting apply(List<LedgerEntry> entries, Set<String> existingReferences) {
+        for (LedgerEntry entry : entries) {
+            boolean pending = pendingReferences.contains(entry.reference());
+            if (entry.type() == TransactionType.DEPOSIT) {
+                if (pending) {
+                    return null;
+                }
+            } else if (pending || existingReferences.contains(entry.reference())) {
+                throw new DuplicateKeyException("Duplicate transaction reference: " + entry.reference());
+            }
+        }
+
+        Map<Long, Long> deltas = deltas(entries);
+        for (Map.Entry<Long, Long> delta : deltas.entrySet()) {
+            long balance = balanceOf(delta.getKey(), false);
+            if (balance + delta.getValue() < 0) {
+                throw new InsufficientBalanceException("Insufficient balance. Available: "
+                        + LedgerEntry.fromMinor(balance) + ", Required: " + LedgerEntry.fromMinor(-delta.getValue()));
+            }
+        }
+
+        long seq = lastSeq + 1;
+        journal.append(seq, entries);
+        lastSeq = seq;
+        deltas.forEach((walletId, delta) -> balances.merge(walletId, delta, Long::sum));
+        entries.forEach(entry -> pendingReferences.add(entry.reference()));
+        return new LedgerReplicator.JournaledPosting(seq, entries);
+    }
+
+    private long balanceOf(Long walletId, boolean replaying) {
+        Long balance = balances.get(walletId);
+        if (balance == null) {
+            BigDecimal stored = walletRepository.findBalanceById(walletId).orElseThrow(() -> replaying
+                    ? new IllegalStateException("Ledger journal references unknown wallet " + walletId)
+                    : new WalletNotFoundException("Wallet not found: " + walletId));
+            balance = LedgerEntry.toMinor(stored);
+            balances.put(walletId, balance);
+        }
+        return balance;
+    }
+
+    private static Map<Long, Long> deltas(List<LedgerEntry> entries) {
+        Map<Long, Long> deltas = new LinkedHashMap<>();
+        for (LedgerEntry entry : entries) {
+            deltas.merge(entry.walletId(), entry.delta(), Long::sum);
+        }
+        return deltas;
+    }
+
+    // A deposit's row already exists, so only new transfer legs are looked up
+    private Set<String> findExistingReferences(List<Command> batch) {
+        List<String> references = new ArrayList<>();
+        for (Command command : batch) {
+            for (LedgerEntry entry : command.entries()) {
+                if (entry.type() != TransactionType.DEPOSIT) {
+                    references.add(entry.reference());
+                }
+            }
+        }
+        return references.isEmpty() ? Set.of()
+                : new HashSet<>(journalRepository.findExistingReferences(references.toArray(new String[0])));
+    }
+
+    private void onReplicated(List<LedgerReplicator.JournaledPosting> postings) {
+        for (LedgerReplicator.JournaledPosting posting : postings) {
+            posting.entries().forEach(entry -> pendingReferences.remove(entry.reference()));
+        }
+        journal.releaseUpTo(postings.get(postings.size() - 1).seq());
+    }
+
+    private record Command(List<LedgerEntry> entries, CompletableFuture<Void> result) {
+    }
+}
@@ -0,0 +1,36 @@
+package com.hng.wallet_service.ledger;
+
+import com.hng.wallet_service.models.enums.TransactionType;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.List;
+
+/**
+ * One balance movement posted through the ledger engine. Replication writes each
+ * posting's entries to the journal; a DEPOSIT also settles its transactions row.
+ */
+public record LedgerEntry(String reference, Long walletId, Long counterpartWalletId, TransactionType type,
+        BigDecimal amount) {
+
+    public static List<LedgerEntry> transfer(Long senderWalletId, Long recipientWalletId, BigDecimal amount,
+            String reference) {
+        return List.of(
+                new LedgerEntry(reference + "_OUT", senderWalletId, recipientWalletId, TransactionType.TRANSFER_OUT, amount),
+                new LedgerEntry(reference + "_IN", recipientWalletId, senderWalletId, TransactionType.TRANSFER_IN, amount));
+    }
+
+    // Balances are kept in kobo, the same two decimal places as the balance columns
+    long delta() {
+        long minor = toMinor(amount);
+        return type == TransactionType.TRANSFER_OUT ? -minor : minor;
+    }
+
+    static long toMinor(BigDecimal amount) {
+        return amount.setScale(2, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    static BigDecimal fromMinor(long minor) {
+        return BigDecimal.valueOf(minor, 2);
+    }
+}
@@ -0,0 +1,244 @@
+package com.hng.wallet_service.ledger;
+
+import com.hng.wallet_service.models.enums.TransactionType;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only journal of ledger postings, written through memory-mapped segment files
+ * named after the first sequence number they hold. A record is
+ * [body length][CRC32C of body][seq, entry count, entries...]; replay stops at the
+ * first empty slot, bad checksum or gap in the sequence, which is where a torn write
+ * left off. Appends come from the engine's writer thread only.
+ */
+class LedgerJournal implements Closeable {
+
+    private static final int RECORD_HEADER_BYTES = 8;
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final TransactionType[] TYPES = TransactionType.values();
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final List<Segment> segments = new ArrayList<>();
+    private final CRC32C crc = new CRC32C();
+    private ByteBuffer scratch = ByteBuffer.allocate(64 * 1024);
+
+    private MappedByteBuffer active;
+    private int forcedUpTo;
+
+    LedgerJournal(Path directory, int segmentBytes) throws IOException {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        Files.createDirectories(directory);
+        try (Stream<Path> files = Files.list(directory)) {
+            files.map(Path::getFileName)
+                    .map(Path::toString)
+                    .filter(name -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX))
+                    .map(name -> new Segment(Long.parseLong(
+                            name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()))))
+                    .sorted((a, b) -> Long.compare(a.firstSeq, b.firstSeq))
+                    .forEach(segments::add);
+        }
+    }
+
+    /**
+     * Reads every intact record, handing those after {@code afterSeq} to the consumer,
+     * and leaves the journal positioned to append the next one. Returns the last
+     * sequence number found, or {@code afterSeq} when there is nothing newer.
+     */
+    long replay(long afterSeq, BiConsumer<Long, List<LedgerEntry>> consumer) throws IOException {
+        long lastSeq = -1;
+        for (int i = 0; i < segments.size(); i++) {
+            MappedByteBuffer buffer = map(segments.get(i));
+            long expectedSeq = segments.get(i).firstSeq;
+            while (true) {
+                int start = buffer.position();
+                List<LedgerEntry> entries = new ArrayList<>();
+                long seq = read(buffer, entries);
+                if (seq != expectedSeq) {
+                    buffer.position(start);
+                    break;
+                }
+                lastSeq = seq;
+                expectedSeq = seq + 1;
+                if (seq > afterSeq) {
+                    consumer.accept(seq, entries);
+                }
+            }
+            if (i == segments.size() - 1) {
+                active = buffer;
+            }
+        }
+
+        if (active == null || lastSeq < afterSeq) {
+            // Nothing on disk, or everything on disk is already replicated
+            roll(afterSeq + 1);
+        } else {
+            // Wipe whatever a torn write left behind so it can never be read back
+            // as a record once new appends reach it
+            int position = active.position();
+            byte[] zeros = new byte[64 * 1024];
+            while (active.hasRemaining()) {
+                active.put(zeros, 0, Math.min(zeros.length, active.remaining()));
+            }
+            active.force();
+            active.position(position);
+            forcedUpTo = position;
+        }
+        releaseUpTo(afterSeq);
+        return Math.max(lastSeq, afterSeq);
+    }
+
+    void append(long seq, List<LedgerEntry> entries) {
+        if (entries.size() > 0xFFFF) {
+            throw new IllegalArgumentException("Posting of " + entries.size() + " entries is too large for the journal");
+        }
+        ByteBuffer body = encode(seq, entries);
+        int recordBytes = RECORD_HEADER_BYTES + body.remaining();
+        if (recordBytes > segmentBytes - Integer.BYTES) {
+            throw new IllegalArgumentException("Posting of " + entries.size() + " entries does not fit in a journal segment");
+        }
+        if (active.remaining() < recordBytes + Integer.BYTES) {
+            force();
+            roll(seq);
+        }
+
+        crc.reset();
+        crc.update(body.duplicate());
+        active.putInt(body.remaining());
+        active.putInt((int) crc.getValue());
+        active.put(body);
+    }
+
+    void force() {
+        int position = active.position();
+        if (position > forcedUpTo) {
+            active.force(forcedUpTo, position - forcedUpTo);
+            forcedUpTo = position;
+        }
+    }
+
+    // Drops segments whose every record has been replicated to the database
+    synchronized void releaseUpTo(long replicatedSeq) {
+        while (segments.size() > 1 && segments.get(1).firstSeq - 1 <= replicatedSeq) {
+            Segment segment = segments.remove(0);
+            try {
+                Files.deleteIfExists(path(segment));
+            } catch (IOException e) {
+                System.err.println("Failed to delete ledger journal segment " + path(segment) + ": " + e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        if (active != null) {
+            force();
+        }
+    }
+
+    private synchronized void roll(long firstSeq) {
+        Segment segment = new Segment(firstSeq);
+        if (!segments.isEmpty() && segments.get(segments.size() - 1).equals(segment)) {
+            // An earlier run created this segment but never completed a record in it
+            segments.remove(segments.size() - 1);
+        }
+        try {
+            Files.deleteIfExists(path(segment));
+            active = map(segment);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create ledger journal segment " + path(segment), e);
+        }
+        forcedUpTo = 0;
+        segments.add(segment);
+    }
+
+    private MappedByteBuffer map(Segment segment) throws IOException {
+        try (FileChannel channel = FileChannel.open(path(segment),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        }
+    }
+
+    private Path path(Segment segment) {
+        return directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, segment.firstSeq, SEGMENT_SUFFIX));
+    }
+
+    private ByteBuffer encode(long seq, List<LedgerEntry> entries) {
+        scratch.clear();
+        ensureScratch(Long.BYTES + Short.BYTES);
+        scratch.putLong(seq);
+        scratch.putShort((short) entries.size());
+        for (LedgerEntry entry : entries) {
+            byte[] reference = entry.reference().getBytes(StandardCharsets.UTF_8);
+            ensureScratch(3 * Long.BYTES + 1 + Short.BYTES + reference.length);
+            scratch.putLong(entry.walletId());
+            scratch.putLong(entry.counterpartWalletId() == null ? 0 : entry.counterpartWalletId());
+            scratch.put((byte) entry.type().ordinal());
+            scratch.putLong(LedgerEntry.toMinor(entry.amount()));
+            scratch.putShort((short) reference.length);
+            scratch.put(reference);
+        }
+        return scratch.flip();
+    }
+
+    private void ensureScratch(int bytes) {
+        if (scratch.remaining() < bytes) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(scratch.capacity() * 2, scratch.position() + bytes));
+            larger.put(scratch.flip());
+            scratch = larger;
+        }
+    }
+
+    // Returns the record's sequence number, or -1 if there is no intact record here
+    private long read(ByteBuffer buffer, List<LedgerEntry> entries) {
+        if (buffer.remaining() < RECORD_HEADER_BYTES) {
+            return -1;
+        }
+        int length = buffer.getInt();
+        int checksum = buffer.getInt();
+        if (length < Long.BYTES + Short.BYTES || length > buffer.remaining()) {
+            return -1;
+        }
+        ByteBuffer body = buffer.slice(buffer.position(), length);
+        crc.reset();
+        crc.update(body.duplicate());
+        if ((int) crc.getValue() != checksum) {
+            return -1;
+        }
+        buffer.position(buffer.position() + length);
+
+        long seq = body.getLong();
+        int count = Short.toUnsignedInt(body.getShort());
+        for (int i = 0; i < count; i++) {
+            long walletId = body.getLong();
+            long counterpart = body.getLong();
+            TransactionType type = TYPES[body.get()];
+            BigDecimal amount = LedgerEntry.fromMinor(body.getLong());
+            byte[] reference = new byte[Short.toUnsignedInt(body.getShort())];
+            body.get(reference);
+            entries.add(new LedgerEntry(new String(reference, StandardCharsets.UTF_8), walletId,
+                    counterpart == 0 ? null : counterpart, type, amount));
+        }
+        return seq;
+    }
+
+    private record Segment(long firstSeq) {
+    }
+}
@@ -0,0 +1,183 @@
+package com.hng.wallet_service.ledger;
+
+import com.hng.wallet_service.models.JournalEntry;
+import com.hng.wallet_service.models.enums.TransactionType;
+import com.hng.wallet_service.services.TransactionService;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Copies journaled postings into the wallet balances and the journal_postings
+ * table, in sequence order and a batch per DB transaction. The last replicated sequence number is
+ * committed with each batch, so the tables are always a consistent snapshot of the
+ * ledger as of ledger_checkpoint.last_seq.
+ */
+@Component
+@RequiredArgsConstructor
+public class LedgerReplicator {
+
+    private static final String APPLY_DELTA_SQL =
+            "UPDATE wallet SET balance = balance + :delta, version = version + 1 WHERE id = :id";
+    private static final String SETTLE_DEPOSIT_SQL =
+            "UPDATE transactions SET status = 'SUCCESS' WHERE reference = :reference AND status <> 'SUCCESS'";
+    private static final String BALANCES_SQL = "SELECT id, balance, stripe_count FROM wallet WHERE id IN (:ids)";
+    private static final String CHECKPOINT_SQL = "UPDATE ledger_checkpoint SET last_seq = :seq WHERE id = 1";
+
+    private final TransactionService transactionService;
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+
+    @Value("${wallet.ledger.replication.max-batch:1000}")
+    private int maxBatch;
+
+    private final BlockingQueue<JournaledPosting> queue = new LinkedBlockingQueue<>();
+    private TransactionTemplate transactionTemplate;
+    private Consumer<List<JournaledPosting>> onReplicated;
+    private Thread worker;
+    private volatile boolean running;
+
+    long loadCheckpoint() {
+        return jdbcTemplate.getJdbcTemplate().queryForObject(
+                "SELECT last_seq FROM ledger_checkpoint WHERE id = 1", Long.class);
+    }
+
+    void start(List<JournaledPosting> backlog, Consumer<List<JournaledPosting>> onReplicated) {
+        this.onReplicated = onReplicated;
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        queue.addAll(backlog);
+        running = true;
+        worker = new Thread(this::run, "ledger-replicator");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    void enqueue(List<JournaledPosting> postings) {
+        queue.addAll(postings);
+    }
+
+    // Whatever is still queued at shutdown is replayed from the journal on the next start
+    @PreDestroy
+    void stop() throws InterruptedException {
+        running = false;
+        if (worker != null) {
+            worker.join(TimeUnit.SECONDS.toMillis(30));
+        }
+    }
+
+    private void run() {
+        List<JournaledPosting> batch = new ArrayList<>(maxBatch);
+        while (running || !queue.isEmpty()) {
+            try {
+                JournaledPosting first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, maxBatch - 1);
+
+                // A batch is retried until it lands: skipping it would leave a gap
+                while (!replicate(batch)) {
+                    if (!running) {
+                        return;
+                    }
+                    Thread.sleep(1000);
+                }
+                onReplicated.accept(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private boolean replicate(List<JournaledPosting> batch) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                List<JournalEntry> entries = new ArrayList<>(batch.size());
+                List<SqlParameterSource> deposits = new ArrayList<>();
+                Map<Long, Long> deltas = new TreeMap<>();
+                Set<Long> walletIds = new HashSet<>();
+                for (JournaledPosting posting : batch) {
+                    for (LedgerEntry entry : posting.entries()) {
+                        walletIds.add(entry.walletId());
+                    }
+                }
+
+                // Only this thread writes balances in engine mode, so replaying the
+                // batch over the stored balances gives the balance after each entry
+                Map<Long, BigDecimal> balances = new HashMap<>();
+                jdbcTemplate.query(BALANCES_SQL, Map.of("ids", walletIds), rs -> {
+                    balances.put(rs.getLong("id"), rs.getInt("stripe_count") > 0 ? null : rs.getBigDecimal("balance"));
+                });
+
+                for (JournaledPosting posting : batch) {
+                    List<JournalEntry.Posting> postings = new ArrayList<>();
+                    for (LedgerEntry entry : posting.entries()) {
+                        BigDecimal balanceAfter = balances.get(entry.walletId());
+                        if (balanceAfter != null) {
+                            balanceAfter = balanceAfter.add(LedgerEntry.fromMinor(entry.delta()));
+                            balances.put(entry.walletId(), balanceAfter);
+                        }
+
+                        if (entry.type() == TransactionType.DEPOSIT) {
+                            deposits.add(new MapSqlParameterSource("reference", entry.reference()));
+                            postings.addAll(JournalEntry.deposit(entry.reference(), entry.walletId(), entry.amount(),
+                                    balanceAfter).postings());
+                        } else if (entry.type() == TransactionType.TRANSFER_OUT) {
+                            postings.add(JournalEntry.Posting.transferOut(entry.reference(), entry.walletId(),
+                                    entry.counterpartWalletId(), entry.amount(), balanceAfter));
+                        } else {
+                            postings.add(JournalEntry.Posting.transferIn(entry.reference(), entry.walletId(),
+                                    entry.counterpartWalletId(), entry.amount(), balanceAfter));
+                        }
+                        deltas.merge(entry.walletId(), entry.delta(), Long::sum);
+                    }
+                    entries.add(new JournalEntry(postings));
+                }
+
+                transactionService.postJournalEntries(entries);
+                if (!deposits.isEmpty()) {
+                    jdbcTemplate.batchUpdate(SETTLE_DEPOSIT_SQL, deposits.toArray(new SqlParameterSource[0]));
+                }
+
+                List<SqlParameterSource> updates = new ArrayList<>(deltas.size());
+                deltas.forEach((walletId, delta) -> updates.add(new MapSqlParameterSource()
+                        .addValue("id", walletId)
+                        .addValue("delta", LedgerEntry.fromMinor(delta))));
+                jdbcTemplate.batchUpdate(APPLY_DELTA_SQL, updates.toArray(new SqlParameterSource[0]));
+
+                jdbcTemplate.update(CHECKPOINT_SQL, Map.of("seq", batch.get(batch.size() - 1).seq()));
+            });
+            return true;
+        } catch (RuntimeException e) {
+            System.err.println("Ledger replication of postings " + batch.get(0).seq() + ".."
+                    + batch.get(batch.size() - 1).seq() + " failed, retrying: " + e.getMessage());
+            return false;
+        }
+    }
+
+    record JournaledPosting(long seq, List<LedgerEntry> entries) {
+    }
+}
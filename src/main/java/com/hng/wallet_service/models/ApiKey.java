@@ -1,5 +1,6 @@
 package com.hng.wallet_service.models;
 
+import com.hng.wallet_service.models.converters.PermissionsConverter;
 import com.hng.wallet_service.models.enums.ApiKeyStatus;
 import com.hng.wallet_service.models.enums.Permissions;
 import jakarta.persistence.*;
@@ -9,7 +10,7 @@ import lombok.NoArgsConstructor;
 import lombok.Setter;
 
 import java.time.LocalDateTime;
-import java.util.List;
+import java.util.EnumSet;
 
 @Entity
 @Table(name = "apikey")
@@ -19,7 +20,7 @@ import java.util.List;
 @Setter
 public class ApiKey extends BaseEntity {
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "user_id", nullable = false)
     private User user;
 
@@ -29,11 +30,13 @@ public class ApiKey extends BaseEntity {
     @Column(nullable = false)
     private String keyHash;
 
+    @Column(unique = true, nullable = false, length = 16)
     private String keyPrefix;
 
-    @ElementCollection(fetch = FetchType.EAGER)
-    @Enumerated(EnumType.STRING)
-    private List<Permissions> permissions;
+    // Bitmask column, see Permissions.bit()
+    @Convert(converter = PermissionsConverter.class)
+    @Column(name = "permissions_mask")
+    private EnumSet<Permissions> permissions = EnumSet.noneOf(Permissions.class);
 
     @Enumerated(EnumType.STRING)
     @Column(nullable = false)
@@ -0,0 +1,42 @@
+package com.hng.wallet_service.models;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.Instant;
+
+/**
+ * First response returned for a client's Idempotency-Key. A row without a
+ * response body is a claim held by the request that is still executing, until
+ * its lease runs out.
+ */
+@Entity
+@Table(name = "idempotency_key", uniqueConstraints = @UniqueConstraint(columnNames = { "user_id", "idempotency_key" }))
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class IdempotencyRecord extends BaseEntity {
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(name = "idempotency_key", nullable = false)
+    private String idempotencyKey;
+
+    // Hash of the request the key was first used with
+    @Column(nullable = false, length = 64)
+    private String requestHash;
+
+    // The reference the request posts under, when it has one
+    private String reference;
+
+    @Column(columnDefinition = "TEXT")
+    private String responseBody;
+
+    // Null once the response is stored
+    private Instant leaseUntil;
+}
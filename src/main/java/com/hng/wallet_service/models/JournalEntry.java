@@ -0,0 +1,64 @@
+package com.hng.wallet_service.models;
+
+import com.hng.wallet_service.models.enums.LedgerAccount;
+import com.hng.wallet_service.models.enums.TransactionType;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * One balanced movement of money: postings that credit (positive amount) and
+ * debit (negative amount) accounts and always sum to zero. Written once to the
+ * journal_postings table and never changed.
+ */
+public record JournalEntry(List<Posting> postings) {
+
+    public JournalEntry {
+        postings = List.copyOf(postings);
+        if (postings.size() < 2) {
+            throw new IllegalArgumentException("A journal entry needs at least two postings");
+        }
+        BigDecimal sum = BigDecimal.ZERO;
+        for (Posting posting : postings) {
+            sum = sum.add(posting.amount());
+        }
+        if (sum.signum() != 0) {
+            throw new IllegalArgumentException("Journal entry does not balance: postings sum to " + sum);
+        }
+    }
+
+    public static JournalEntry transfer(String reference, Long senderWalletId, Long recipientWalletId, BigDecimal amount,
+            BigDecimal senderBalanceAfter, BigDecimal recipientBalanceAfter) {
+        return new JournalEntry(List.of(
+                Posting.transferOut(reference + "_OUT", senderWalletId, recipientWalletId, amount, senderBalanceAfter),
+                Posting.transferIn(reference + "_IN", recipientWalletId, senderWalletId, amount, recipientBalanceAfter)));
+    }
+
+    // Paystack's clearing account pays for the wallet credit
+    public static JournalEntry deposit(String reference, Long walletId, BigDecimal amount, BigDecimal balanceAfter) {
+        return new JournalEntry(List.of(
+                new Posting(reference, LedgerAccount.WALLET, walletId, TransactionType.DEPOSIT, amount, null, balanceAfter),
+                new Posting(reference, LedgerAccount.PAYSTACK, null, TransactionType.DEPOSIT, amount.negate(), null, null)));
+    }
+
+    /**
+     * A credit or debit of one account. walletId is set only for WALLET postings;
+     * balanceAfter is the wallet balance the posting left behind, null for hot
+     * wallets, whose balance is spread over stripes.
+     */
+    public record Posting(String reference, LedgerAccount account, Long walletId, TransactionType type,
+            BigDecimal amount, Long counterpartWalletId, BigDecimal balanceAfter) {
+
+        public static Posting transferOut(String reference, Long walletId, Long recipientWalletId, BigDecimal amount,
+                BigDecimal balanceAfter) {
+            return new Posting(reference, LedgerAccount.WALLET, walletId, TransactionType.TRANSFER_OUT,
+                    amount.negate(), recipientWalletId, balanceAfter);
+        }
+
+        public static Posting transferIn(String reference, Long walletId, Long senderWalletId, BigDecimal amount,
+                BigDecimal balanceAfter) {
+            return new Posting(reference, LedgerAccount.WALLET, walletId, TransactionType.TRANSFER_IN,
+                    amount, senderWalletId, balanceAfter);
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.hng.wallet_service.models;
+
+import org.hibernate.annotations.IdGeneratorType;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Ids drawn from a per-table sequence ("&lt;table&gt;_seq") through the pooled
+ * optimizer, so one nextval covers wallet.id.allocation-size inserts.
+ */
+@IdGeneratorType(PooledSequenceGenerator.class)
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.FIELD, ElementType.METHOD})
+public @interface PooledSequence {
+}
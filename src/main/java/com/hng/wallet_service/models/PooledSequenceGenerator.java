@@ -0,0 +1,33 @@
+package com.hng.wallet_service.models;
+
+import org.hibernate.MappingException;
+import org.hibernate.engine.config.spi.ConfigurationService;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+import org.hibernate.id.enhanced.StandardOptimizerDescriptor;
+import org.hibernate.service.ServiceRegistry;
+import org.hibernate.type.Type;
+
+import java.util.Properties;
+
+/**
+ * Sequence generator behind {@link PooledSequence}. JPA only takes the allocation
+ * size as an annotation constant, so it is read here from the
+ * wallet.id.allocation-size Hibernate setting instead. The database sequences
+ * are created with the same increment; changing it on an existing database
+ * needs a matching ALTER SEQUENCE ... INCREMENT BY.
+ */
+public class PooledSequenceGenerator extends SequenceStyleGenerator {
+
+    public static final String ALLOCATION_SIZE_SETTING = "wallet.id.allocation-size";
+    private static final int DEFAULT_ALLOCATION_SIZE = 50;
+
+    @Override
+    public void configure(Type type, Properties parameters, ServiceRegistry serviceRegistry) throws MappingException {
+        Object allocationSize = serviceRegistry.requireService(ConfigurationService.class)
+                .getSettings()
+                .getOrDefault(ALLOCATION_SIZE_SETTING, DEFAULT_ALLOCATION_SIZE);
+        parameters.put(INCREMENT_PARAM, allocationSize.toString());
+        parameters.put(OPT_PARAM, StandardOptimizerDescriptor.POOLED.getExternalName());
+        super.configure(type, parameters, serviceRegistry);
+    }
+}
@@ -21,7 +21,8 @@ public class Transaction extends BaseEntity {
     @Column(unique = true, nullable = false)
     private String reference;
 
-    @ManyToOne
+    // Lazy: callers only need the wallet id, which the proxy holds without a query
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "wallet_id", referencedColumnName = "id", nullable = false)
     private Wallet wallet;
 
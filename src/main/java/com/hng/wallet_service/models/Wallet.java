@@ -1,10 +1,12 @@
 package com.hng.wallet_service.models;
 
+import com.hng.wallet_service.models.enums.WalletTier;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
+import org.hibernate.annotations.ColumnDefault;
 
 import java.math.BigDecimal;
 
@@ -27,6 +29,16 @@ public class Wallet extends BaseEntity{
     @JoinColumn(name = "user_id", nullable=false)
     private User user;
 
+    // 0 for a normal wallet; N > 0 when credits are spread over N WalletStripe rows
+    @ColumnDefault("0")
+    @Column(nullable = false)
+    private int stripeCount = 0;
+
+    @Enumerated(EnumType.STRING)
+    @ColumnDefault("'STANDARD'")
+    @Column(nullable = false)
+    private WalletTier tier = WalletTier.STANDARD;
+
     @Version
     private Long version;
 }
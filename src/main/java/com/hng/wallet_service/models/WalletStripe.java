@@ -0,0 +1,33 @@
+package com.hng.wallet_service.models;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.math.BigDecimal;
+
+/**
+ * One slice of a hot wallet's balance. Credits to a hot wallet land on a random
+ * stripe so concurrent credits don't serialise on the wallet row; the wallet's
+ * balance is its own balance column plus the sum of its stripes.
+ */
+@Entity
+@Table(name = "wallet_stripe", uniqueConstraints = @UniqueConstraint(columnNames = { "wallet_id", "stripe_index" }))
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class WalletStripe extends BaseEntity {
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "wallet_id", nullable = false)
+    private Wallet wallet;
+
+    @Column(nullable = false)
+    private int stripeIndex;
+
+    @Column(nullable = false, precision = 19, scale = 2)
+    private BigDecimal balance = BigDecimal.ZERO;
+}
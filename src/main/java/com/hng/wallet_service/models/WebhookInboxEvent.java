@@ -0,0 +1,49 @@
+package com.hng.wallet_service.models;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.Instant;
+
+/**
+ * A verified Paystack webhook delivery waiting to be applied. Deliveries are
+ * de-duplicated on eventKey and processed in id order per wallet.
+ */
+@Entity
+@Table(name = "webhook_inbox")
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class WebhookInboxEvent extends BaseEntity {
+
+    // Event type plus the Paystack id of the object it is about
+    @Column(unique = true, nullable = false)
+    private String eventKey;
+
+    @Column(nullable = false)
+    private String eventType;
+
+    private String reference;
+
+    // Wallet the referenced transaction belongs to; events are ordered per wallet
+    private Long walletId;
+
+    @Column(nullable = false, columnDefinition = "TEXT")
+    private String payload;
+
+    @Column(nullable = false)
+    private int attempts = 0;
+
+    // Not picked up before this time: set while claimed and after a failure
+    @Column(nullable = false)
+    private Instant availableAt;
+
+    private Instant processedAt;
+
+    @Column(length = 1000)
+    private String lastError;
+}
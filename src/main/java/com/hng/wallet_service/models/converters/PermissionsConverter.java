@@ -0,0 +1,21 @@
+package com.hng.wallet_service.models.converters;
+
+import com.hng.wallet_service.models.enums.Permissions;
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+
+import java.util.EnumSet;
+
+@Converter
+public class PermissionsConverter implements AttributeConverter<EnumSet<Permissions>, Integer> {
+
+    @Override
+    public Integer convertToDatabaseColumn(EnumSet<Permissions> permissions) {
+        return permissions == null ? 0 : Permissions.toMask(permissions);
+    }
+
+    @Override
+    public EnumSet<Permissions> convertToEntityAttribute(Integer mask) {
+        return Permissions.fromMask(mask == null ? 0 : mask);
+    }
+}
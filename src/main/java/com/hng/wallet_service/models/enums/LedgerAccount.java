@@ -0,0 +1,9 @@
+package com.hng.wallet_service.models.enums;
+
+public enum LedgerAccount {
+
+    // A customer wallet; every other account is outside the service
+    WALLET,
+    // Money collected by Paystack and owed to the wallets it was deposited into
+    PAYSTACK
+}
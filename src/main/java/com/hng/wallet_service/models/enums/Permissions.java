@@ -1,7 +1,32 @@
 package com.hng.wallet_service.models.enums;
 
+import java.util.EnumSet;
+import java.util.Set;
+
 public enum Permissions {
 
-    DEPOSIT, TRANSFER, READ
+    // Stored as bits of ApiKey.permissions by ordinal - only ever append new values
+    DEPOSIT, TRANSFER, READ;
+
+    public int bit() {
+        return 1 << ordinal();
+    }
+
+    public static int toMask(Set<Permissions> permissions) {
+        int mask = 0;
+        for (Permissions permission : permissions) {
+            mask |= permission.bit();
+        }
+        return mask;
+    }
 
+    public static EnumSet<Permissions> fromMask(int mask) {
+        EnumSet<Permissions> permissions = EnumSet.noneOf(Permissions.class);
+        for (Permissions permission : values()) {
+            if ((mask & permission.bit()) != 0) {
+                permissions.add(permission);
+            }
+        }
+        return permissions;
+    }
 }
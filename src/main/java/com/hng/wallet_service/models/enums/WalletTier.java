@@ -0,0 +1,7 @@
+package com.hng.wallet_service.models.enums;
+
+public enum WalletTier {
+
+    // Each tier has its own transfer limits (see TransferLimits)
+    BASIC, STANDARD, PREMIUM
+}
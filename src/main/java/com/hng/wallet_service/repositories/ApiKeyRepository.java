@@ -12,6 +12,8 @@ import java.util.Optional;
 public interface ApiKeyRepository extends JpaRepository<ApiKey, Long> {
     Optional<ApiKey> findByKeyPrefix(String keyPrefix);
 
+    boolean existsByKeyPrefix(String keyPrefix);
+
     List<ApiKey> findByUserIdAndStatus(Long userId, ApiKeyStatus status);
 
     long countByUserIdAndStatus(Long userId, ApiKeyStatus status);
@@ -0,0 +1,24 @@
+package com.hng.wallet_service.repositories;
+
+import com.hng.wallet_service.models.IdempotencyRecord;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.Optional;
+
+@Repository
+public interface IdempotencyRecordRepository extends JpaRepository<IdempotencyRecord, Long> {
+    Optional<IdempotencyRecord> findByUserIdAndIdempotencyKey(Long userId, String idempotencyKey);
+
+    // Renews a pending claim whose lease has run out; 1 for the single caller that gets it
+    @Transactional
+    @Modifying
+    @Query("UPDATE IdempotencyRecord r SET r.leaseUntil = :leaseUntil WHERE r.id = :id "
+            + "AND r.responseBody IS NULL AND (r.leaseUntil IS NULL OR r.leaseUntil <= :now)")
+    int takeOverExpired(@Param("id") Long id, @Param("now") Instant now, @Param("leaseUntil") Instant leaseUntil);
+}
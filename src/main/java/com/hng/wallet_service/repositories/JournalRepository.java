@@ -0,0 +1,169 @@
+package com.hng.wallet_service.repositories;
+
+import com.hng.wallet_service.dto.TransactionSummaryDTO;
+import com.hng.wallet_service.models.JournalEntry;
+import com.hng.wallet_service.models.enums.TransactionStatus;
+import com.hng.wallet_service.models.enums.TransactionType;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Connection;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The double-entry journal: journal_postings, range-partitioned by month of
+ * posted_at (see DatabaseMigrations). Postings are only ever inserted; old
+ * months leave by detaching their partition.
+ */
+@Repository
+@RequiredArgsConstructor
+public class JournalRepository {
+
+    public static final String TABLE = "journal_postings";
+
+    // Every posting of a call goes in one statement, so the balance trigger sees whole entries
+    private static final String INSERT_SQL = "INSERT INTO journal_postings (journal_id, leg, reference, account, "
+            + "wallet_id, type, amount, counterpart_wallet_id, balance_after, posted_at) "
+            + "SELECT p.journal_id, p.leg, p.reference, p.account, p.wallet_id, p.type, p.amount, "
+            + "p.counterpart_wallet_id, p.balance_after, ? "
+            + "FROM unnest(?::bigint[], ?::smallint[], ?::varchar[], ?::varchar[], ?::bigint[], ?::varchar[], "
+            + "?::numeric[], ?::bigint[], ?::numeric[]) "
+            + "AS p(journal_id, leg, reference, account, wallet_id, type, amount, counterpart_wallet_id, balance_after)";
+
+    // Keyset pages over idx_journal_postings_wallet, newest first
+    private static final String FIRST_PAGE_SQL = "SELECT journal_id, leg, type, amount, posted_at "
+            + "FROM journal_postings WHERE wallet_id = ? AND posted_at >= ? "
+            + "ORDER BY posted_at DESC, journal_id DESC, leg DESC LIMIT ?";
+    private static final String PAGE_BEFORE_SQL = "SELECT journal_id, leg, type, amount, posted_at "
+            + "FROM journal_postings WHERE wallet_id = ? AND posted_at >= ? AND (posted_at, journal_id, leg) < (?, ?, ?) "
+            + "ORDER BY posted_at DESC, journal_id DESC, leg DESC LIMIT ?";
+
+    // Debits are served as positive TRANSFER_OUT amounts, as the history API always showed them
+    private static final RowMapper<TransactionSummaryDTO> SUMMARY_MAPPER = (rs, rowNum) -> new TransactionSummaryDTO(
+            rs.getLong("journal_id"),
+            rs.getInt("leg"),
+            TransactionType.valueOf(rs.getString("type")),
+            rs.getBigDecimal("amount").abs(),
+            TransactionStatus.SUCCESS,
+            rs.getTimestamp("posted_at").toInstant());
+
+    private static final String PARTITIONS_SQL = "SELECT c.relname FROM pg_inherits i "
+            + "JOIN pg_class c ON c.oid = i.inhrelid WHERE i.inhparent = 'journal_postings'::regclass";
+
+    // Month tables no longer attached to journal_postings
+    private static final String DETACHED_PARTITIONS_SQL = "SELECT c.relname FROM pg_class c "
+            + "WHERE c.relkind = 'r' AND NOT c.relispartition AND c.relnamespace = current_schema()::regnamespace "
+            + "AND c.relname ~ '^journal_postings_y[0-9]{4}m[0-9]{2}$'";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Appends entries in one statement; journalIds[i] identifies entries[i]. All
+     * postings share postedAt.
+     */
+    public void insert(long[] journalIds, List<JournalEntry> entries, Instant postedAt) {
+        List<Long> ids = new ArrayList<>();
+        List<Integer> legs = new ArrayList<>();
+        List<String> references = new ArrayList<>();
+        List<String> accounts = new ArrayList<>();
+        List<Long> walletIds = new ArrayList<>();
+        List<String> types = new ArrayList<>();
+        List<Object> amounts = new ArrayList<>();
+        List<Long> counterparts = new ArrayList<>();
+        List<Object> balances = new ArrayList<>();
+        for (int i = 0; i < entries.size(); i++) {
+            List<JournalEntry.Posting> postings = entries.get(i).postings();
+            for (int leg = 0; leg < postings.size(); leg++) {
+                JournalEntry.Posting posting = postings.get(leg);
+                ids.add(journalIds[i]);
+                legs.add(leg);
+                references.add(posting.reference());
+                accounts.add(posting.account().name());
+                walletIds.add(posting.walletId());
+                types.add(posting.type().name());
+                amounts.add(posting.amount());
+                counterparts.add(posting.counterpartWalletId());
+                balances.add(posting.balanceAfter());
+            }
+        }
+
+        jdbcTemplate.update(INSERT_SQL, ps -> {
+            Connection connection = ps.getConnection();
+            ps.setTimestamp(1, Timestamp.from(postedAt));
+            ps.setArray(2, connection.createArrayOf("bigint", ids.toArray()));
+            ps.setArray(3, connection.createArrayOf("integer", legs.toArray()));
+            ps.setArray(4, connection.createArrayOf("varchar", references.toArray()));
+            ps.setArray(5, connection.createArrayOf("varchar", accounts.toArray()));
+            ps.setArray(6, connection.createArrayOf("bigint", walletIds.toArray()));
+            ps.setArray(7, connection.createArrayOf("varchar", types.toArray()));
+            ps.setArray(8, connection.createArrayOf("numeric", amounts.toArray()));
+            ps.setArray(9, connection.createArrayOf("bigint", counterparts.toArray()));
+            ps.setArray(10, connection.createArrayOf("numeric", balances.toArray()));
+        });
+    }
+
+    public List<TransactionSummaryDTO> findFirstPage(Long walletId, Instant from, int limit) {
+        return jdbcTemplate.query(FIRST_PAGE_SQL, SUMMARY_MAPPER, walletId, Timestamp.from(from), limit);
+    }
+
+    // A page of a wallet's postings from 'from' on and strictly before the given one
+    public List<TransactionSummaryDTO> findPageBefore(Long walletId, Instant from, Instant postedAt, long journalId,
+            int leg, int limit) {
+        return jdbcTemplate.query(PAGE_BEFORE_SQL, SUMMARY_MAPPER, walletId, Timestamp.from(from),
+                Timestamp.from(postedAt), journalId, leg, limit);
+    }
+
+    // One array parameter however many references are checked
+    public List<String> findExistingReferences(String[] references) {
+        return jdbcTemplate.query("SELECT reference FROM journal_postings WHERE reference = ANY(?)",
+                (rs, rowNum) -> rs.getString(1),
+                (Object) references);
+    }
+
+    public void createPartition(YearMonth month) {
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + partitionName(month) + " PARTITION OF journal_postings "
+                + "FOR VALUES FROM ('" + startOf(month) + "') TO ('" + startOf(month.plusMonths(1)) + "')");
+    }
+
+    // Runs outside any transaction: DETACH ... CONCURRENTLY can't run inside one
+    public void detachPartition(YearMonth month) {
+        jdbcTemplate.execute("ALTER TABLE journal_postings DETACH PARTITION " + partitionName(month) + " CONCURRENTLY");
+    }
+
+    public List<YearMonth> findAttachedPartitions() {
+        return jdbcTemplate.query(PARTITIONS_SQL, (rs, rowNum) -> monthOfPartition(rs.getString(1)));
+    }
+
+    public List<YearMonth> findDetachedPartitions() {
+        return jdbcTemplate.query(DETACHED_PARTITIONS_SQL, (rs, rowNum) -> monthOfPartition(rs.getString(1)));
+    }
+
+    // Only for a month that has been detached and archived
+    public void dropDetachedPartition(YearMonth month) {
+        jdbcTemplate.execute("DROP TABLE IF EXISTS " + partitionName(month));
+    }
+
+    public static String partitionName(YearMonth month) {
+        return String.format("%s_y%04dm%02d", TABLE, month.getYear(), month.getMonthValue());
+    }
+
+    public static YearMonth monthOfPartition(String partitionName) {
+        String suffix = partitionName.substring(TABLE.length() + 2);
+        return YearMonth.of(Integer.parseInt(suffix.substring(0, 4)), Integer.parseInt(suffix.substring(5)));
+    }
+
+    public static Instant startOf(YearMonth month) {
+        return month.atDay(1).atStartOfDay(ZoneOffset.UTC).toInstant();
+    }
+
+    public static YearMonth monthOf(Instant instant) {
+        return YearMonth.from(instant.atOffset(ZoneOffset.UTC));
+    }
+}
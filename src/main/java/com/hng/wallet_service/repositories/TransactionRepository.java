@@ -1,17 +1,35 @@
 package com.hng.wallet_service.repositories;
 
 import com.hng.wallet_service.models.Transaction;
+import com.hng.wallet_service.models.enums.TransactionStatus;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
-import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface TransactionRepository extends JpaRepository<Transaction, Long> {
     Optional<Transaction> findByReference(String reference);
 
-    List<Transaction> findByWalletIdOrderByCreatedAtDesc(Long walletId);
+    // Serialises a webhook and the deposit reconciler settling the same deposit
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT t FROM Transaction t WHERE t.reference = :reference")
+    Optional<Transaction> findByReferenceForUpdate(@Param("reference") String reference);
 
     boolean existsByReference(String reference);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE Transaction t SET t.status = :status WHERE t.reference = :reference "
+            + "AND t.status = com.hng.wallet_service.models.enums.TransactionStatus.PENDING")
+    int updateStatusIfPending(@Param("reference") String reference, @Param("status") TransactionStatus status);
+
+    @Query("SELECT t.wallet.id FROM Transaction t WHERE t.reference = :reference")
+    Optional<Long> findWalletIdByReference(@Param("reference") String reference);
 }
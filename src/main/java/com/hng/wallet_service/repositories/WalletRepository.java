@@ -4,10 +4,14 @@ import com.hng.wallet_service.models.Wallet;
 import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
@@ -23,4 +27,53 @@ public interface WalletRepository extends JpaRepository<Wallet, Long> {
     @Lock(LockModeType.PESSIMISTIC_WRITE)
     @Query("SELECT w FROM Wallet w WHERE w.walletNumber = :walletNumber")
     Optional<Wallet> findByWalletNumberWithLock(@Param("walletNumber") String walletNumber);
+
+    @Query("SELECT w.id FROM Wallet w WHERE w.user.id = :userId")
+    Optional<Long> findIdByUserId(@Param("userId") Long userId);
+
+    @Query("SELECT w.id FROM Wallet w WHERE w.walletNumber = :walletNumber")
+    Optional<Long> findIdByWalletNumber(@Param("walletNumber") String walletNumber);
+
+    List<WalletIdView> findByWalletNumberIn(Collection<String> walletNumbers);
+
+    // One array parameter however many numbers are checked
+    @Query(value = "SELECT wallet_number FROM wallet WHERE wallet_number = ANY(:walletNumbers)", nativeQuery = true)
+    List<String> findExistingWalletNumbers(@Param("walletNumbers") String[] walletNumbers);
+
+    // Includes the stripes of a hot wallet
+    @Query("SELECT w.balance + COALESCE((SELECT SUM(s.balance) FROM WalletStripe s WHERE s.wallet = w), 0) "
+            + "FROM Wallet w WHERE w.id = :id")
+    Optional<BigDecimal> findBalanceById(@Param("id") Long id);
+
+    // Posts one leg against a wallet, bumping the version so entity-based writers
+    // still see the change optimistically. A credit (:credit true) lands on a hot
+    // wallet's stripe number (slot % stripe_count), or on the wallet row itself when
+    // it has no stripes. A debit only touches the wallet row and updates nothing
+    // when the balance is insufficient. Debits and credits can share a JDBC batch.
+    String POST_LEG_SQL = "WITH stripe AS ("
+            + "UPDATE wallet_stripe SET balance = balance + :amount "
+            + "WHERE :credit AND wallet_id = :id "
+            + "AND stripe_index = :slot % (SELECT NULLIF(stripe_count, 0) FROM wallet WHERE id = :id) "
+            + "RETURNING 1) "
+            + "UPDATE wallet SET balance = balance + CASE WHEN :credit THEN :amount ELSE -:amount END, "
+            + "version = version + 1 "
+            + "WHERE id = :id AND NOT EXISTS (SELECT 1 FROM stripe) AND (:credit OR balance >= :amount)";
+
+    // Locks a hot wallet's stripes in index order and moves their balances onto the
+    // wallet row. Returns 0 when there was nothing to sweep.
+    @Modifying(flushAutomatically = true)
+    @Query(value = "WITH locked AS ("
+            + "SELECT id, balance FROM wallet_stripe WHERE wallet_id = :id ORDER BY stripe_index FOR UPDATE), "
+            + "swept AS ("
+            + "UPDATE wallet_stripe s SET balance = 0 FROM locked "
+            + "WHERE s.id = locked.id AND locked.balance <> 0 RETURNING locked.balance AS amount) "
+            + "UPDATE wallet SET balance = balance + (SELECT SUM(amount) FROM swept), version = version + 1 "
+            + "WHERE id = :id AND EXISTS (SELECT 1 FROM swept)", nativeQuery = true)
+    int sweepStripes(@Param("id") Long id);
+
+    interface WalletIdView {
+        Long getId();
+
+        String getWalletNumber();
+    }
 }
@@ -0,0 +1,9 @@
+package com.hng.wallet_service.repositories;
+
+import com.hng.wallet_service.models.WalletStripe;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface WalletStripeRepository extends JpaRepository<WalletStripe, Long> {
+}
@@ -0,0 +1,28 @@
+package com.hng.wallet_service.repositories;
+
+import com.hng.wallet_service.models.WebhookInboxEvent;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+
+@Repository
+public interface WebhookInboxRepository extends JpaRepository<WebhookInboxEvent, Long> {
+
+    @Modifying
+    @Query("UPDATE WebhookInboxEvent e SET e.processedAt = :processedAt WHERE e.id = :id")
+    void markProcessed(@Param("id") Long id, @Param("processedAt") Instant processedAt);
+
+    interface InboxStats {
+        long getDepth();
+
+        Double getLagSeconds();
+    }
+
+    @Query(value = "SELECT count(*) AS depth, EXTRACT(EPOCH FROM now() - min(created_at)) AS lagSeconds "
+            + "FROM webhook_inbox WHERE processed_at IS NULL", nativeQuery = true)
+    InboxStats findStats();
+}
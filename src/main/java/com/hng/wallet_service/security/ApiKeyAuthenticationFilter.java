@@ -1,7 +1,5 @@
 package com.hng.wallet_service.security;
 
-import com.hng.wallet_service.models.ApiKey;
-import com.hng.wallet_service.models.enums.Permissions;
 import com.hng.wallet_service.services.ApiKeyService;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
@@ -9,14 +7,11 @@ import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
-import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
 
 @Component
 @RequiredArgsConstructor
@@ -35,20 +30,14 @@ public class ApiKeyAuthenticationFilter extends OncePerRequestFilter {
 
         if (apiKeyHeader != null) {
             try {
-                ApiKey apiKey = apiKeyService.validateApiKey(apiKeyHeader);
-
-                // Convert permissions to authorities
-                List<SimpleGrantedAuthority> authorities = new ArrayList<>();
-                authorities.add(new SimpleGrantedAuthority("ROLE_SERVICE"));
-
-                for (Permissions permission : apiKey.getPermissions()) {
-                    authorities.add(new SimpleGrantedAuthority("SCOPE_" + permission.name()));
-                }
+                ApiKeyPrincipalCache.ApiKeyPrincipal principal = apiKeyService.authenticate(apiKeyHeader);
 
                 UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(
-                        apiKey.getUser().getId(),
+                        principal.userId(),
                         null,
-                        authorities);
+                        principal.authorities());
+                // Identifies the key to the rate limiter
+                authentication.setDetails(principal);
 
                 SecurityContextHolder.getContext().setAuthentication(authentication);
             } catch (Exception e) {
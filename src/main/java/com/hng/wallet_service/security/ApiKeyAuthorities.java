@@ -0,0 +1,45 @@
+package com.hng.wallet_service.security;
+
+import com.hng.wallet_service.models.enums.Permissions;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Authority lists for API keys, interned per distinct permission bitmask so
+ * authenticating a key never builds new authority objects.
+ */
+public final class ApiKeyAuthorities {
+
+    private static final List<List<SimpleGrantedAuthority>> BY_MASK = buildAll();
+
+    private ApiKeyAuthorities() {
+    }
+
+    public static List<SimpleGrantedAuthority> forMask(int mask) {
+        return BY_MASK.get(mask);
+    }
+
+    private static List<List<SimpleGrantedAuthority>> buildAll() {
+        SimpleGrantedAuthority service = new SimpleGrantedAuthority("ROLE_SERVICE");
+        Permissions[] permissions = Permissions.values();
+        List<SimpleGrantedAuthority> scopes = new ArrayList<>();
+        for (Permissions permission : permissions) {
+            scopes.add(new SimpleGrantedAuthority("SCOPE_" + permission.name()));
+        }
+
+        List<List<SimpleGrantedAuthority>> all = new ArrayList<>();
+        for (int mask = 0; mask < (1 << permissions.length); mask++) {
+            List<SimpleGrantedAuthority> authorities = new ArrayList<>();
+            authorities.add(service);
+            for (Permissions permission : permissions) {
+                if ((mask & permission.bit()) != 0) {
+                    authorities.add(scopes.get(permission.ordinal()));
+                }
+            }
+            all.add(List.copyOf(authorities));
+        }
+        return List.copyOf(all);
+    }
+}
@@ -0,0 +1,130 @@
+package com.hng.wallet_service.security;
+
+import com.hng.wallet_service.utils.ExpiringCache;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+
+/**
+ * Node-local cache of authenticated API keys, keyed by key prefix.
+ * - Entries live until the cache TTL or the key's own expiry, whichever is first
+ * - Revocation and rollover are fanned out to every node with Postgres NOTIFY on
+ *   the apikey_invalidation channel; each node LISTENs on a dedicated connection
+ * - If the listener connection drops the whole cache is cleared, since
+ *   notifications sent while disconnected are lost
+ */
+@Component
+@RequiredArgsConstructor
+public class ApiKeyPrincipalCache {
+
+    private static final String CHANNEL = "apikey_invalidation";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final DataSourceProperties dataSourceProperties;
+
+    @Value("${apikey.cache.ttl-seconds:60}")
+    private long ttlSeconds;
+
+    @Value("${apikey.cache.max-entries:10000}")
+    private int maxEntries;
+
+    private ExpiringCache<String, ApiKeyPrincipal> principals;
+    private Thread listener;
+    private volatile boolean running;
+
+    @PostConstruct
+    void start() {
+        principals = new ExpiringCache<>(maxEntries);
+        running = true;
+        listener = new Thread(this::listen, "apikey-invalidation-listener");
+        listener.setDaemon(true);
+        listener.start();
+    }
+
+    @PreDestroy
+    void stop() {
+        running = false;
+        listener.interrupt();
+    }
+
+    public ApiKeyPrincipal get(String keyPrefix) {
+        return principals.get(keyPrefix);
+    }
+
+    public void put(String keyPrefix, ApiKeyPrincipal principal) {
+        long ttlExpiry = System.currentTimeMillis() + ttlSeconds * 1000;
+        long keyExpiry = principal.expiresAt()
+                .atZone(ZoneId.systemDefault())
+                .toInstant()
+                .toEpochMilli();
+        principals.put(keyPrefix, principal, Math.min(ttlExpiry, keyExpiry));
+    }
+
+    /**
+     * Drops the entry locally and queues a NOTIFY for every other node. When called
+     * inside a transaction the notification is only delivered once it commits.
+     */
+    public void publishInvalidation(String keyPrefix) {
+        principals.invalidate(keyPrefix);
+        jdbcTemplate.query("SELECT pg_notify(?, ?)", rs -> null, CHANNEL, keyPrefix);
+    }
+
+    private void listen() {
+        while (running) {
+            try (Connection connection = DriverManager.getConnection(
+                    dataSourceProperties.determineUrl(),
+                    dataSourceProperties.determineUsername(),
+                    dataSourceProperties.determinePassword())) {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + CHANNEL);
+                }
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+
+                while (running) {
+                    PGNotification[] notifications = pgConnection.getNotifications(500);
+                    if (notifications == null) {
+                        continue;
+                    }
+                    for (PGNotification notification : notifications) {
+                        principals.invalidate(notification.getParameter());
+                    }
+                }
+            } catch (SQLException e) {
+                if (!running) {
+                    return;
+                }
+                System.err.println("API key invalidation listener disconnected: " + e.getMessage());
+            }
+
+            // Anything published while we were disconnected is lost
+            principals.clear();
+            try {
+                Thread.sleep(1000);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    public record ApiKeyPrincipal(
+            Long userId,
+            String keyHash,
+            LocalDateTime expiresAt,
+            List<SimpleGrantedAuthority> authorities) {
+    }
+}
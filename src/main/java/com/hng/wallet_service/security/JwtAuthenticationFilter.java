@@ -13,12 +13,15 @@ import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
-import java.util.Collections;
+import java.util.List;
 
 @Component
 @RequiredArgsConstructor
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
+    private static final List<SimpleGrantedAuthority> USER_AUTHORITIES = List.of(
+            new SimpleGrantedAuthority("ROLE_USER"));
+
     private final JwtUtil jwtUtil;
 
     @Override
@@ -33,17 +36,14 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
             String token = authHeader.substring(7);
 
             try {
-                String email = jwtUtil.extractEmail(token);
-                Long userId = jwtUtil.extractUserId(token);
-
-                if (email != null) {
-                    if (jwtUtil.validateToken(token, email)) {
-                        UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(
-                                userId,
-                                null,
-                                Collections.singletonList(new SimpleGrantedAuthority("ROLE_USER")));
-                        SecurityContextHolder.getContext().setAuthentication(authentication);
-                    }
+                JwtUtil.JwtPrincipal principal = jwtUtil.verify(token);
+
+                if (principal.email() != null) {
+                    UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(
+                            principal.userId(),
+                            null,
+                            USER_AUTHORITIES);
+                    SecurityContextHolder.getContext().setAuthentication(authentication);
                 }
             } catch (Exception e) {
                 // Invalid token, continue without authentication
@@ -0,0 +1,100 @@
+package com.hng.wallet_service.security;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hng.wallet_service.dto.ErrorResponseDTO;
+import com.hng.wallet_service.models.enums.Permissions;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+
+/**
+ * Runs after the API key and JWT filters have resolved the caller. Requests made
+ * with an API key draw on the key's bucket and its owner's; JWT requests on the
+ * user's alone. The bucket is picked by the scope the endpoint requires, and the
+ * tighter of the two is reported in RateLimit-* headers. Unauthenticated
+ * requests are not limited here.
+ */
+@Component
+@RequiredArgsConstructor
+public class RateLimitFilter extends OncePerRequestFilter {
+
+    private final RateLimiter rateLimiter;
+    private final ObjectMapper objectMapper;
+
+    @Value("${wallet.rate-limit.enabled:true}")
+    private boolean enabled;
+
+    @Override
+    protected void doFilterInternal(
+            HttpServletRequest request,
+            HttpServletResponse response,
+            FilterChain filterChain) throws ServletException, IOException {
+
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (!enabled || authentication == null || !(authentication.getPrincipal() instanceof Long userId)) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        Permissions scope = scopeOf(request);
+        RateLimiter.Decision decision;
+        if (authentication.getDetails() instanceof ApiKeyPrincipalCache.ApiKeyPrincipal apiKey) {
+            // A key out of tokens doesn't spend its owner's
+            decision = rateLimiter.tryAcquireForKey(apiKey.keyHash(), scope);
+            if (decision.allowed()) {
+                decision = decision.tighter(rateLimiter.tryAcquireForUser(userId, scope));
+            }
+        } else {
+            decision = rateLimiter.tryAcquireForUser(userId, scope);
+        }
+
+        response.setHeader("RateLimit-Limit", Integer.toString(decision.limit()));
+        response.setHeader("RateLimit-Remaining", Integer.toString(decision.remaining()));
+        response.setHeader("RateLimit-Reset", Long.toString(toSeconds(decision.resetNanos())));
+        if (decision.allowed()) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        response.setHeader("Retry-After", Long.toString(Math.max(1, toSeconds(decision.retryAfterNanos()))));
+        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        objectMapper.writeValue(response.getOutputStream(), ErrorResponseDTO.builder()
+                .timestamp(LocalDateTime.now())
+                .status(HttpStatus.TOO_MANY_REQUESTS.value())
+                .error("Too Many Requests")
+                .message("Rate limit exceeded for " + scope.name().toLowerCase() + " requests")
+                .path(request.getRequestURI())
+                .build());
+    }
+
+    // The scope the endpoint's @PreAuthorize asks of an API key
+    private static Permissions scopeOf(HttpServletRequest request) {
+        if ("POST".equals(request.getMethod())) {
+            String path = request.getRequestURI();
+            if (path.startsWith("/wallet/transfer")) {
+                return Permissions.TRANSFER;
+            }
+            if (path.equals("/wallet/deposit")) {
+                return Permissions.DEPOSIT;
+            }
+        }
+        return Permissions.READ;
+    }
+
+    private static long toSeconds(long nanos) {
+        return (nanos + 999_999_999L) / 1_000_000_000L;
+    }
+}
@@ -0,0 +1,161 @@
+package com.hng.wallet_service.security;
+
+import com.hng.wallet_service.models.enums.Permissions;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * In-memory token buckets per API key and per user, one bucket per
+ * {@link Permissions} scope. A bucket is a single long, the time at which it
+ * would be full again (GCRA); taking a token is one compare-and-set on it, and
+ * the maps behind it are read without locking. A full bucket holds nothing a new
+ * one wouldn't, so the periodic sweep simply drops them.
+ */
+@Component
+public class RateLimiter {
+
+    private static final Permissions[] SCOPES = Permissions.values();
+
+    private final ConcurrentHashMap<String, AtomicLongArray> keyBuckets = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Long, AtomicLongArray> userBuckets = new ConcurrentHashMap<>();
+    private final long origin = System.nanoTime();
+
+    @Value("${wallet.rate-limit.deposit.per-second:5}")
+    private double depositPerSecond;
+
+    @Value("${wallet.rate-limit.deposit.burst:10}")
+    private int depositBurst;
+
+    @Value("${wallet.rate-limit.transfer.per-second:20}")
+    private double transferPerSecond;
+
+    @Value("${wallet.rate-limit.transfer.burst:40}")
+    private int transferBurst;
+
+    @Value("${wallet.rate-limit.read.per-second:50}")
+    private double readPerSecond;
+
+    @Value("${wallet.rate-limit.read.burst:100}")
+    private int readBurst;
+
+    // A user's own requests and all of its keys together get this multiple of a key's limit
+    @Value("${wallet.rate-limit.user-multiplier:2}")
+    private int userMultiplier;
+
+    private Limit[] keyLimits;
+    private Limit[] userLimits;
+
+    @PostConstruct
+    void init() {
+        keyLimits = new Limit[SCOPES.length];
+        userLimits = new Limit[SCOPES.length];
+        for (Permissions scope : SCOPES) {
+            double perSecond = switch (scope) {
+                case DEPOSIT -> depositPerSecond;
+                case TRANSFER -> transferPerSecond;
+                case READ -> readPerSecond;
+            };
+            int burst = switch (scope) {
+                case DEPOSIT -> depositBurst;
+                case TRANSFER -> transferBurst;
+                case READ -> readBurst;
+            };
+            keyLimits[scope.ordinal()] = Limit.of(perSecond, burst);
+            userLimits[scope.ordinal()] = Limit.of(perSecond * userMultiplier, burst * userMultiplier);
+        }
+    }
+
+    public Decision tryAcquireForKey(String keyHash, Permissions scope) {
+        AtomicLongArray buckets = keyBuckets.get(keyHash);
+        if (buckets == null) {
+            buckets = keyBuckets.computeIfAbsent(keyHash, k -> new AtomicLongArray(SCOPES.length));
+        }
+        return tryAcquire(buckets, scope, keyLimits[scope.ordinal()]);
+    }
+
+    public Decision tryAcquireForUser(Long userId, Permissions scope) {
+        AtomicLongArray buckets = userBuckets.get(userId);
+        if (buckets == null) {
+            buckets = userBuckets.computeIfAbsent(userId, k -> new AtomicLongArray(SCOPES.length));
+        }
+        return tryAcquire(buckets, scope, userLimits[scope.ordinal()]);
+    }
+
+    /**
+     * Drops buckets that have refilled. A request racing the sweep may take its
+     * token from a bucket just dropped, so a principal can get one token more
+     * than its burst; nothing more is lost.
+     */
+    @Scheduled(fixedDelayString = "${wallet.rate-limit.sweep-interval-ms:60000}")
+    public void evictIdle() {
+        long now = now();
+        keyBuckets.values().removeIf(buckets -> isFull(buckets, now));
+        userBuckets.values().removeIf(buckets -> isFull(buckets, now));
+    }
+
+    int size() {
+        return keyBuckets.size() + userBuckets.size();
+    }
+
+    private Decision tryAcquire(AtomicLongArray buckets, Permissions scope, Limit limit) {
+        int slot = scope.ordinal();
+        long now = now();
+        while (true) {
+            long fullAt = buckets.get(slot);
+            long next = Math.max(fullAt, now) + limit.intervalNanos();
+            long untilFull = next - now;
+            if (untilFull > limit.capacityNanos()) {
+                return new Decision(false, limit.burst(), 0, fullAt - now, untilFull - limit.capacityNanos());
+            }
+            if (buckets.compareAndSet(slot, fullAt, next)) {
+                int remaining = (int) ((limit.capacityNanos() - untilFull) / limit.intervalNanos());
+                return new Decision(true, limit.burst(), remaining, untilFull, 0);
+            }
+        }
+    }
+
+    private static boolean isFull(AtomicLongArray buckets, long now) {
+        for (int i = 0; i < buckets.length(); i++) {
+            if (buckets.get(i) > now) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Offset from construction, so that 0 is always in the past and a new bucket starts full
+    private long now() {
+        return System.nanoTime() - origin + 1;
+    }
+
+    private record Limit(long intervalNanos, long capacityNanos, int burst) {
+
+        static Limit of(double perSecond, int burst) {
+            if (perSecond <= 0 || burst < 1) {
+                throw new IllegalArgumentException("Rate limits need a positive rate and a burst of at least 1");
+            }
+            long interval = Math.max(1, Math.round(1_000_000_000d / perSecond));
+            return new Limit(interval, interval * burst, burst);
+        }
+    }
+
+    /**
+     * Outcome of taking one token. resetNanos is how long until the bucket is
+     * full again; retryAfterNanos, when denied, how long until a token is free.
+     */
+    public record Decision(boolean allowed, int limit, int remaining, long resetNanos, long retryAfterNanos) {
+
+        // The decision a client should see of two buckets that both applied
+        public Decision tighter(Decision other) {
+            if (allowed != other.allowed) {
+                return allowed ? other : this;
+            }
+            return remaining <= other.remaining ? this : other;
+        }
+    }
+}
@@ -18,6 +18,7 @@ public class SecurityConfig {
 
         private final JwtAuthenticationFilter jwtAuthenticationFilter;
         private final ApiKeyAuthenticationFilter apiKeyAuthenticationFilter;
+        private final RateLimitFilter rateLimitFilter;
 
         @Bean
         public SecurityFilterChain securityFilterChain(HttpSecurity http) throws Exception {
@@ -42,7 +43,9 @@ public class SecurityConfig {
                                 .oauth2Login(oauth -> oauth
                                                 .defaultSuccessUrl("/auth/google/callback", true))
                                 .addFilterBefore(apiKeyAuthenticationFilter, UsernamePasswordAuthenticationFilter.class)
-                                .addFilterBefore(jwtAuthenticationFilter, UsernamePasswordAuthenticationFilter.class);
+                                .addFilterBefore(jwtAuthenticationFilter, UsernamePasswordAuthenticationFilter.class)
+                                // Once the caller is known, before any work is done for it
+                                .addFilterAfter(rateLimitFilter, UsernamePasswordAuthenticationFilter.class);
 
                 return http.build();
         }
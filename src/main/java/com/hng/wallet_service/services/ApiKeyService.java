@@ -12,15 +12,19 @@ import com.hng.wallet_service.models.enums.ApiKeyStatus;
 import com.hng.wallet_service.models.enums.Permissions;
 import com.hng.wallet_service.repositories.ApiKeyRepository;
 import com.hng.wallet_service.repositories.UserRepository;
+import com.hng.wallet_service.security.ApiKeyAuthorities;
+import com.hng.wallet_service.security.ApiKeyPrincipalCache;
+import com.hng.wallet_service.security.ApiKeyPrincipalCache.ApiKeyPrincipal;
+import com.hng.wallet_service.utils.ApiKeyHasher;
 import lombok.RequiredArgsConstructor;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.security.SecureRandom;
 import java.time.LocalDateTime;
 import java.util.Base64;
-import java.util.List;
+import java.util.Collection;
+import java.util.EnumSet;
 
 @Service
 @RequiredArgsConstructor
@@ -28,13 +32,17 @@ public class ApiKeyService {
 
     private final ApiKeyRepository apiKeyRepository;
     private final UserRepository userRepository;
-    private final BCryptPasswordEncoder passwordEncoder = new BCryptPasswordEncoder();
+    private final ApiKeyHasher apiKeyHasher;
+    private final ApiKeyPrincipalCache apiKeyPrincipalCache;
+
+    private static final String KEY_SCHEME = "sk_live_";
+    private static final int KEY_PREFIX_LENGTH = KEY_SCHEME.length() + 8;
 
     @Transactional
     public ApiKeyCreationResponse createApiKey(
             Long userId,
             String name,
-            List<Permissions> permissions,
+            Collection<Permissions> permissions,
             String expiry) {
         // Check 5-key limit
         long activeKeyCount = apiKeyRepository.countByUserIdAndStatus(userId, ApiKeyStatus.ACTIVE);
@@ -46,10 +54,15 @@ public class ApiKeyService {
         User user = userRepository.findById(userId)
                 .orElseThrow(() -> new WalletNotFoundException("User not found with ID: " + userId));
 
-        // Generate random API key
-        String rawKey = generateRandomKey();
-        String keyHash = passwordEncoder.encode(rawKey);
-        String keyPrefix = "sk_live_" + rawKey.substring(0, 8);
+        // Generate random API key, retrying on the rare prefix collision so the
+        // prefix stays a unique lookup key
+        String rawKey;
+        String keyPrefix;
+        do {
+            rawKey = generateRandomKey();
+            keyPrefix = KEY_SCHEME + rawKey.substring(0, 8);
+        } while (apiKeyRepository.existsByKeyPrefix(keyPrefix));
+        String keyHash = apiKeyHasher.hash(rawKey);
 
         // Convert expiry to LocalDateTime
         LocalDateTime expiresAt = calculateExpiryDate(expiry);
@@ -59,13 +72,17 @@ public class ApiKeyService {
         apiKey.setName(name);
         apiKey.setKeyHash(keyHash);
         apiKey.setKeyPrefix(keyPrefix);
-        apiKey.setPermissions(permissions);
+        EnumSet<Permissions> permissionSet = EnumSet.noneOf(Permissions.class);
+        if (permissions != null) {
+            permissionSet.addAll(permissions);
+        }
+        apiKey.setPermissions(permissionSet);
         apiKey.setStatus(ApiKeyStatus.ACTIVE);
         apiKey.setExpiresAt(expiresAt);
 
         apiKeyRepository.save(apiKey);
 
-        return new ApiKeyCreationResponse("sk_live_" + rawKey, expiresAt);
+        return new ApiKeyCreationResponse(KEY_SCHEME + rawKey, expiresAt);
     }
 
     @Transactional
@@ -81,45 +98,87 @@ public class ApiKeyService {
             throw new InvalidAmountException("API key has not expired yet. Expires at: " + expiredKey.getExpiresAt());
         }
 
+        apiKeyPrincipalCache.publishInvalidation(expiredKey.getKeyPrefix());
+
         // Create new key with same permissions
         return createApiKey(userId, expiredKey.getName(), expiredKey.getPermissions(), newExpiry);
     }
 
+    @Transactional
+    public void revokeApiKey(Long userId, Long keyId) {
+        ApiKey apiKey = apiKeyRepository.findById(keyId)
+                .orElseThrow(() -> new WalletNotFoundException("API key not found with ID: " + keyId));
+
+        if (!apiKey.getUser().getId().equals(userId)) {
+            throw new UnauthorizedException("You are not authorized to revoke this API key");
+        }
+
+        apiKey.setStatus(ApiKeyStatus.REVOKED);
+        apiKeyRepository.save(apiKey);
+
+        apiKeyPrincipalCache.publishInvalidation(apiKey.getKeyPrefix());
+    }
+
+    public ApiKeyPrincipal authenticate(String rawKey) {
+        String keyPrefix = extractKeyPrefix(rawKey);
+
+        // Cache hit: only the (cheap) digest check, no DB work
+        ApiKeyPrincipal cached = apiKeyPrincipalCache.get(keyPrefix);
+        if (cached != null && apiKeyHasher.matches(rawKey.substring(KEY_SCHEME.length()), cached.keyHash())) {
+            return cached;
+        }
+
+        ApiKey apiKey = validateApiKey(rawKey);
+
+        ApiKeyPrincipal principal = new ApiKeyPrincipal(
+                apiKey.getUser().getId(),
+                apiKey.getKeyHash(),
+                apiKey.getExpiresAt(),
+                ApiKeyAuthorities.forMask(Permissions.toMask(apiKey.getPermissions())));
+        apiKeyPrincipalCache.put(keyPrefix, principal);
+        return principal;
+    }
+
+    @Transactional
     public ApiKey validateApiKey(String rawKey) {
         // The rawKey passed here is the full key, e.g., "sk_live_abcdefgh..."
         // The prefix stored in the DB is "sk_live_" + first 8 chars of the generated
-        // random key.
+        // random key, and is unique, so it identifies at most one row.
         // The hash stored in the DB is of the full generated random key (excluding
         // "sk_live_").
+        String keyPrefix = extractKeyPrefix(rawKey);
+
+        // Unknown prefixes are rejected without touching the hash
+        ApiKey key = apiKeyRepository.findByKeyPrefix(keyPrefix)
+                .orElseThrow(() -> new UnauthorizedException("Invalid API key. Please check your key and try again."));
 
-        // Extract the prefix from the raw key (first 16 chars: "sk_live_" + first 8
-        // chars of random key)
-        String keyPrefix = rawKey.substring(0, 16);
-
-        // The actual random key part (without "sk_live_") starts at index 8 of the full
-        // rawKey.
-        String actualRandomKey = rawKey.substring(8);
-
-        // Get ALL active API keys (not just ones with null userId!)
-        List<ApiKey> keys = apiKeyRepository.findAll().stream()
-                .filter(k -> k.getStatus() == ApiKeyStatus.ACTIVE)
-                .toList();
-
-        for (ApiKey key : keys) {
-            if (key.getKeyPrefix().equals(keyPrefix)
-                    && passwordEncoder.matches(rawKey.substring(8), key.getKeyHash())) {
-                if (key.getExpiresAt().isBefore(LocalDateTime.now())) {
-                    throw new ApiKeyExpiredException(
-                            "API key has expired. Please create a new key or rollover the expired one.");
-                }
-                if (key.getStatus() != ApiKeyStatus.ACTIVE) {
-                    throw new ApiKeyRevokedException("API key has been revoked. Please create a new key.");
-                }
-                return key;
-            }
+        String secretPart = rawKey.substring(KEY_SCHEME.length());
+        if (!apiKeyHasher.matches(secretPart, key.getKeyHash())) {
+            throw new UnauthorizedException("Invalid API key. Please check your key and try again.");
         }
 
-        throw new UnauthorizedException("Invalid API key. Please check your key and try again.");
+        if (key.getStatus() != ApiKeyStatus.ACTIVE) {
+            throw new ApiKeyRevokedException("API key has been revoked. Please create a new key.");
+        }
+        if (key.getExpiresAt().isBefore(LocalDateTime.now())) {
+            throw new ApiKeyExpiredException(
+                    "API key has expired. Please create a new key or rollover the expired one.");
+        }
+
+        // Transparently move legacy BCrypt hashes to the fast digest on first use.
+        // Saved explicitly since authenticate() calls this outside a transaction.
+        if (apiKeyHasher.needsUpgrade(key.getKeyHash())) {
+            key.setKeyHash(apiKeyHasher.hash(secretPart));
+            apiKeyRepository.save(key);
+        }
+        return key;
+    }
+
+    private String extractKeyPrefix(String rawKey) {
+        if (rawKey == null || rawKey.length() <= KEY_PREFIX_LENGTH || !rawKey.startsWith(KEY_SCHEME)) {
+            throw new UnauthorizedException("Invalid API key. Please check your key and try again.");
+        }
+        return rawKey.substring(0, KEY_PREFIX_LENGTH);
     }
 
     private String generateRandomKey() {
@@ -24,23 +24,23 @@ public class AuthService {
         String name = oauth2User.getAttribute("name");
         String googleSubjectId = oauth2User.getAttribute("sub");
 
-        // Find or create user
-        User user = userRepository.findByGoogleSubjectId(googleSubjectId)
-                .orElseGet(() -> {
-                    User newUser = new User();
-                    newUser.setEmail(email);
-                    newUser.setFullName(name);
-                    newUser.setGoogleSubjectId(googleSubjectId);
-                    User savedUser = userRepository.save(newUser);
-
-                    // Auto-create wallet for new user
-                    walletService.createWallet(savedUser);
-
-                    return savedUser;
-                });
-
-        // Get user's wallet
-        Wallet wallet = walletService.getWalletByUserId(user.getId());
+        // Find or create user; a new user's wallet is created alongside and both
+        // rows are inserted when the transaction commits
+        Wallet wallet;
+        User user = userRepository.findByGoogleSubjectId(googleSubjectId).orElse(null);
+        if (user == null) {
+            user = new User();
+            user.setEmail(email);
+            user.setFullName(name);
+            user.setGoogleSubjectId(googleSubjectId);
+            user = userRepository.save(user);
+
+            // Auto-create wallet for new user
+            wallet = walletService.createWallet(user);
+        } else {
+            // Get user's wallet
+            wallet = walletService.getWalletByUserId(user.getId());
+        }
 
         // Generate JWT
         String jwt = jwtUtil.generateToken(user.getEmail(), user.getId());
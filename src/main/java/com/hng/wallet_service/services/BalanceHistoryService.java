@@ -0,0 +1,177 @@
+package com.hng.wallet_service.services;
+
+import com.hng.wallet_service.archive.JournalArchive;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.List;
+
+/**
+ * Balances as of any instant. Every posting records the balance it left behind
+ * (except on hot wallets, whose balance is spread over stripes), and a daily job
+ * stores each wallet's closing balance for the UTC days it had postings. So a
+ * point-in-time balance is the last posting before the instant, or the last
+ * snapshot before that day plus the postings since, never the whole history.
+ * Postings since the snapshot may sit in the journal archive as well as the table.
+ */
+@Service
+@RequiredArgsConstructor
+public class BalanceHistoryService {
+
+    private static final String LAST_POSTING_SQL = "SELECT balance_after FROM journal_postings "
+            + "WHERE wallet_id = :walletId AND posted_at < :at "
+            + "ORDER BY posted_at DESC, journal_id DESC, leg DESC LIMIT 1";
+
+    private static final String LAST_SNAPSHOT_SQL = "SELECT snapshot_date, closing_balance FROM wallet_balance_snapshot "
+            + "WHERE wallet_id = :walletId AND snapshot_date < :day ORDER BY snapshot_date DESC LIMIT 1";
+
+    private static final String POSTED_SINCE_SQL = "SELECT COALESCE(SUM(amount), 0) FROM journal_postings "
+            + "WHERE wallet_id = :walletId AND posted_at >= :from AND posted_at < :at";
+
+    // Closing balance is the last recorded balance_after of the day, or the previous
+    // snapshot plus the day's postings when the wallet is hot
+    private static final String SNAPSHOT_DAY_SQL = "INSERT INTO wallet_balance_snapshot "
+            + "(wallet_id, snapshot_date, closing_balance) "
+            + "SELECT d.wallet_id, :day, COALESCE(d.last_balance, COALESCE(prev.closing_balance, 0) + d.delta) "
+            + "FROM (SELECT wallet_id, SUM(amount) AS delta, "
+            + "(array_agg(balance_after ORDER BY posted_at DESC, journal_id DESC, leg DESC))[1] AS last_balance "
+            + "FROM journal_postings WHERE wallet_id IS NOT NULL AND posted_at >= :from AND posted_at < :to "
+            + "GROUP BY wallet_id) d "
+            + "LEFT JOIN LATERAL (SELECT closing_balance FROM wallet_balance_snapshot s "
+            + "WHERE s.wallet_id = d.wallet_id AND s.snapshot_date < :day "
+            + "ORDER BY s.snapshot_date DESC LIMIT 1) prev ON true "
+            + "ON CONFLICT (wallet_id, snapshot_date) DO NOTHING";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+    private final JournalArchive journalArchive;
+
+    @Value("${wallet.balance-snapshot.enabled:true}")
+    private boolean enabled;
+
+    // A day is snapshotted only this long after it ends, so postings still in flight at midnight land first
+    @Value("${wallet.balance-snapshot.settle-minutes:5}")
+    private long settleMinutes;
+
+    /**
+     * Wallet balance just before {@code at}; postings at exactly {@code at} are
+     * not included.
+     */
+    public BigDecimal balanceAt(Long walletId, Instant at) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("walletId", walletId)
+                .addValue("at", Timestamp.from(at));
+
+        List<BigDecimal> lastPosting = jdbcTemplate.query(LAST_POSTING_SQL, params,
+                (rs, rowNum) -> rs.getBigDecimal("balance_after"));
+        if (!lastPosting.isEmpty() && lastPosting.get(0) != null) {
+            return lastPosting.get(0);
+        }
+
+        // Hot wallet, or its postings are archived: start from the last closing
+        // balance before the day of 'at'
+        params.addValue("day", Date.valueOf(LocalDate.ofInstant(at, ZoneOffset.UTC)));
+        List<Snapshot> snapshots = jdbcTemplate.query(LAST_SNAPSHOT_SQL, params,
+                (rs, rowNum) -> new Snapshot(rs.getDate("snapshot_date").toLocalDate(), rs.getBigDecimal("closing_balance")));
+
+        BigDecimal opening = BigDecimal.ZERO.setScale(2);
+        Instant from = Instant.EPOCH;
+        if (!snapshots.isEmpty()) {
+            opening = snapshots.get(0).closingBalance();
+            from = startOfDay(snapshots.get(0).date().plusDays(1));
+        }
+        // Before archivedUntil the postings are summed from the archive, after it from the tables
+        Instant archivedUntil = journalArchive.archivedUntil();
+        params.addValue("from", Timestamp.from(from.isAfter(archivedUntil) ? from : archivedUntil));
+        return opening.add(jdbcTemplate.queryForObject(POSTED_SINCE_SQL, params, BigDecimal.class))
+                .add(journalArchive.sumPostings(walletId, from, at.isBefore(archivedUntil) ? at : archivedUntil));
+    }
+
+    @Scheduled(cron = "${wallet.balance-snapshot.cron:0 5 0 * * *}", zone = "UTC")
+    public void scheduledRun() {
+        if (enabled) {
+            snapshotClosedDays();
+        }
+    }
+
+    /**
+     * Snapshots every closed day after the last one done, oldest first, and
+     * returns how many days were taken. One day per transaction, under an
+     * advisory lock so that only one instance works through the backlog.
+     */
+    public int snapshotClosedDays() {
+        LocalDate lastClosedDay = LocalDate.ofInstant(
+                Instant.now().minus(Duration.ofMinutes(settleMinutes)), ZoneOffset.UTC).minusDays(1);
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        int days = 0;
+        int wallets = 0;
+
+        while (true) {
+            Integer taken = transaction.execute(status -> snapshotNextDay(lastClosedDay));
+            if (taken == null) {
+                break;
+            }
+            days++;
+            wallets += taken;
+        }
+
+        if (days > 0) {
+            System.out.println("Balance snapshots taken for " + days + " days, " + wallets + " wallet closing balances");
+        }
+        return days;
+    }
+
+    // Returns the number of wallets snapshotted, or null when there is no day left to do
+    private Integer snapshotNextDay(LocalDate lastClosedDay) {
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        Boolean locked = jdbcTemplate.queryForObject(
+                "SELECT pg_try_advisory_xact_lock(hashtext('wallet_balance_snapshot'))", params, Boolean.class);
+        if (!Boolean.TRUE.equals(locked)) {
+            return null;
+        }
+
+        Date lastDate = jdbcTemplate.queryForObject(
+                "SELECT last_date FROM balance_snapshot_checkpoint WHERE id = 1", params, Date.class);
+        LocalDate day;
+        if (lastDate != null) {
+            day = lastDate.toLocalDate().plusDays(1);
+        } else {
+            Timestamp firstPosting = jdbcTemplate.queryForObject(
+                    "SELECT min(posted_at) FROM journal_postings", params, Timestamp.class);
+            if (firstPosting == null) {
+                return null;
+            }
+            day = LocalDate.ofInstant(firstPosting.toInstant(), ZoneOffset.UTC);
+        }
+        if (day.isAfter(lastClosedDay)) {
+            return null;
+        }
+
+        params.addValue("day", Date.valueOf(day))
+                .addValue("from", Timestamp.from(startOfDay(day)))
+                .addValue("to", Timestamp.from(startOfDay(day.plusDays(1))));
+        int wallets = jdbcTemplate.update(SNAPSHOT_DAY_SQL, params);
+        jdbcTemplate.update("UPDATE balance_snapshot_checkpoint SET last_date = :day WHERE id = 1", params);
+        return wallets;
+    }
+
+    private static Instant startOfDay(LocalDate day) {
+        return day.atStartOfDay(ZoneOffset.UTC).toInstant();
+    }
+
+    private record Snapshot(LocalDate date, BigDecimal closingBalance) {
+    }
+}
@@ -0,0 +1,180 @@
+package com.hng.wallet_service.services;
+
+import com.hng.wallet_service.clients.PaystackClient;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Settles deposits whose webhook never arrived. Deposits still PENDING after
+ * stale-after-minutes are paged through idx_transactions_pending_deposits, looked
+ * up at Paystack a few at a time and no faster than max-calls-per-second, and the
+ * answer is applied through {@link PaystackService#applyChargeEvent} as if the
+ * webhook had come in.
+ */
+@Service
+@RequiredArgsConstructor
+public class DepositReconciler {
+
+    private static final String STALE_DEPOSITS_SQL = "SELECT id, reference, created_at FROM transactions "
+            + "WHERE status = 'PENDING' AND type = 'DEPOSIT' AND created_at < :cutoff "
+            + "AND (created_at, id) > (:afterCreatedAt, :afterId) "
+            + "ORDER BY created_at, id LIMIT :limit";
+
+    private final PaystackClient paystackClient;
+    private final PaystackService paystackService;
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${wallet.reconciler.enabled:true}")
+    private boolean enabled;
+
+    @Value("${wallet.reconciler.stale-after-minutes:30}")
+    private long staleAfterMinutes;
+
+    @Value("${wallet.reconciler.page-size:500}")
+    private int pageSize;
+
+    @Value("${wallet.reconciler.parallelism:4}")
+    private int parallelism;
+
+    @Value("${wallet.reconciler.max-calls-per-second:20}")
+    private int maxCallsPerSecond;
+
+    private final ExecutorService workers = Executors.newVirtualThreadPerTaskExecutor();
+
+    @PreDestroy
+    void shutdown() {
+        workers.close();
+    }
+
+    @Scheduled(fixedDelayString = "${wallet.reconciler.interval-ms:300000}",
+            initialDelayString = "${wallet.reconciler.interval-ms:300000}")
+    public void scheduledRun() {
+        if (enabled) {
+            reconcile();
+        }
+    }
+
+    /**
+     * Works through every deposit that has been PENDING for longer than
+     * stale-after-minutes and returns how many of them were settled. Deposits
+     * Paystack still reports as in progress are left for the next run.
+     */
+    public int reconcile() {
+        Instant cutoff = Instant.now().minus(Duration.ofMinutes(staleAfterMinutes));
+        long callIntervalNanos = TimeUnit.SECONDS.toNanos(1) / Math.max(1, maxCallsPerSecond);
+        Semaphore slots = new Semaphore(parallelism);
+        AtomicInteger settled = new AtomicInteger();
+        int checked = 0;
+
+        Timestamp afterCreatedAt = new Timestamp(0);
+        long afterId = 0;
+        long nextCallAt = System.nanoTime();
+        try {
+            while (true) {
+                List<StaleDeposit> page = jdbcTemplate.query(STALE_DEPOSITS_SQL, new MapSqlParameterSource()
+                                .addValue("cutoff", Timestamp.from(cutoff))
+                                .addValue("afterCreatedAt", afterCreatedAt)
+                                .addValue("afterId", afterId)
+                                .addValue("limit", pageSize),
+                        (rs, rowNum) -> new StaleDeposit(
+                                rs.getLong("id"),
+                                rs.getString("reference"),
+                                rs.getTimestamp("created_at")));
+
+                for (StaleDeposit deposit : page) {
+                    // Spaces Paystack calls evenly, then waits for a free worker
+                    long wait = nextCallAt - System.nanoTime();
+                    if (wait > 0) {
+                        TimeUnit.NANOSECONDS.sleep(wait);
+                    }
+                    nextCallAt = Math.max(nextCallAt, System.nanoTime()) + callIntervalNanos;
+                    slots.acquire();
+
+                    workers.submit(() -> {
+                        try {
+                            if (settle(deposit.reference())) {
+                                settled.incrementAndGet();
+                            }
+                        } finally {
+                            slots.release();
+                        }
+                    });
+                }
+                checked += page.size();
+
+                if (page.size() < pageSize) {
+                    break;
+                }
+                StaleDeposit last = page.get(page.size() - 1);
+                afterCreatedAt = last.createdAt();
+                afterId = last.id();
+            }
+            // Let the last calls finish before reporting
+            slots.acquire(parallelism);
+            slots.release(parallelism);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (checked > 0) {
+            System.out.println("Deposit reconciler checked " + checked + " stale deposits, settled " + settled.get());
+        }
+        return settled.get();
+    }
+
+    private boolean settle(String reference) {
+        String status;
+        try {
+            status = paystackClient.verifyTransaction(reference);
+        } catch (RuntimeException e) {
+            // Paystack slow or busy; the deposit stays PENDING for the next run
+            record("error");
+            System.err.println("Could not verify deposit " + reference + ": " + e.getMessage());
+            return false;
+        }
+
+        // A reference Paystack never saw belongs to a checkout that was never opened
+        String eventType = status == null ? "charge.abandoned" : switch (status) {
+            case "success" -> "charge.success";
+            case "failed" -> "charge.failed";
+            case "abandoned" -> "charge.abandoned";
+            default -> null;
+        };
+        record(status == null ? "not_found" : status);
+        if (eventType == null) {
+            return false;
+        }
+
+        try {
+            paystackService.applyChargeEvent(eventType, reference, status);
+            return true;
+        } catch (RuntimeException e) {
+            System.err.println("Could not settle deposit " + reference + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    private void record(String outcome) {
+        meterRegistry.counter("wallet.reconciler.deposits", "outcome", outcome).increment();
+    }
+
+    private record StaleDeposit(long id, String reference, Timestamp createdAt) {
+    }
+}
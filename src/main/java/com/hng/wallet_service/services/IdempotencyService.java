@@ -0,0 +1,224 @@
+package com.hng.wallet_service.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hng.wallet_service.exceptions.IdempotencyConflictException;
+import com.hng.wallet_service.exceptions.InvalidIdempotencyKeyException;
+import com.hng.wallet_service.models.IdempotencyRecord;
+import com.hng.wallet_service.repositories.IdempotencyRecordRepository;
+import com.hng.wallet_service.utils.ExpiringCache;
+import com.hng.wallet_service.utils.ReferenceGenerator;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Runs a request at most once per (user, Idempotency-Key) and hands the first
+ * successful response back to every retry. Responses are stored in the
+ * idempotency_key table behind a bounded in-memory cache; a retry that arrives
+ * while the original is still running on this instance waits for it. The claim a
+ * running request holds is leased, so a request cut short by a crash doesn't
+ * block its key for the whole ttl.
+ */
+@Service
+@RequiredArgsConstructor
+public class IdempotencyService {
+
+    private static final int MAX_KEY_LENGTH = 255;
+    private static final TypeReference<Map<String, String>> RESPONSE_TYPE = new TypeReference<>() {
+    };
+
+    private final IdempotencyRecordRepository idempotencyRecordRepository;
+    private final ObjectMapper objectMapper;
+    private final ReferenceGenerator referenceGenerator;
+
+    @Value("${wallet.idempotency.ttl-hours:24}")
+    private long ttlHours;
+
+    @Value("${wallet.idempotency.pending-lease-seconds:60}")
+    private long pendingLeaseSeconds;
+
+    @Value("${wallet.idempotency.cache.max-entries:10000}")
+    private int cacheMaxEntries;
+
+    private final ConcurrentHashMap<String, CompletableFuture<StoredResponse>> inFlight = new ConcurrentHashMap<>();
+    private ExpiringCache<String, StoredResponse> cache;
+
+    @PostConstruct
+    void init() {
+        cache = new ExpiringCache<>(cacheMaxEntries);
+    }
+
+    /**
+     * Executes the action, or returns the response stored for this key. The request
+     * fingerprint guards against a key being reused for a different request.
+     * Failed actions store nothing, so the client may retry them with the same key.
+     * If the request running the action dies, a retry runs it again once the claim's
+     * lease has run out, so the action must be safe to repeat.
+     */
+    public Map<String, String> execute(Long userId, String idempotencyKey, String request,
+            Supplier<Map<String, String>> action) {
+        return execute(userId, idempotencyKey, request, null, reference -> action.get(), reference -> null);
+    }
+
+    /**
+     * As above, for an action that posts under a reference and must not run twice.
+     * The reference is made with referencePrefix, recorded with the claim and
+     * passed to the action. A retry that finds the lease run out asks
+     * {@code outcome} for the response the reference's posting would have had, or
+     * null if it never happened, and only then runs the action, under the same reference.
+     */
+    public Map<String, String> execute(Long userId, String idempotencyKey, String request, String referencePrefix,
+            Function<String, Map<String, String>> action, Function<String, Map<String, String>> outcome) {
+        if (idempotencyKey == null) {
+            return action.apply(referencePrefix == null ? null : referenceGenerator.next(referencePrefix));
+        }
+        if (idempotencyKey.isBlank() || idempotencyKey.length() > MAX_KEY_LENGTH) {
+            throw new InvalidIdempotencyKeyException(
+                    "Idempotency-Key must be between 1 and " + MAX_KEY_LENGTH + " characters");
+        }
+
+        String requestHash = hash(request);
+        String cacheKey = userId + ":" + idempotencyKey;
+        StoredResponse cached = cache.get(cacheKey);
+        if (cached != null) {
+            return cached.bodyFor(requestHash);
+        }
+
+        CompletableFuture<StoredResponse> claim = new CompletableFuture<>();
+        CompletableFuture<StoredResponse> original = inFlight.putIfAbsent(cacheKey, claim);
+        if (original != null) {
+            try {
+                return original.join().bodyFor(requestHash);
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException cause) {
+                    throw cause;
+                }
+                throw e;
+            }
+        }
+
+        try {
+            StoredResponse response = executeOnce(userId, idempotencyKey, requestHash, referencePrefix, action,
+                    outcome);
+            cache.put(cacheKey, response, response.expiresAt().toEpochMilli());
+            claim.complete(response);
+            return response.bodyFor(requestHash);
+        } catch (RuntimeException e) {
+            claim.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(cacheKey, claim);
+        }
+    }
+
+    private StoredResponse executeOnce(Long userId, String idempotencyKey, String requestHash, String referencePrefix,
+            Function<String, Map<String, String>> action, Function<String, Map<String, String>> outcome) {
+        Instant now = Instant.now();
+        Optional<IdempotencyRecord> existing =
+                idempotencyRecordRepository.findByUserIdAndIdempotencyKey(userId, idempotencyKey);
+        IdempotencyRecord record;
+        if (existing.isPresent() && expiresAt(existing.get()).isAfter(now)) {
+            record = existing.get();
+            if (record.getResponseBody() != null) {
+                return stored(record);
+            }
+            if (!record.getRequestHash().equals(requestHash)) {
+                throw new IdempotencyConflictException(
+                        "Idempotency-Key has already been used for a different request");
+            }
+            // The request holding the claim died, or its lease ran out: one retry takes it over
+            if (idempotencyRecordRepository.takeOverExpired(record.getId(), now, leaseUntil(now)) == 0) {
+                throw new IdempotencyConflictException("A request with this Idempotency-Key is still being processed");
+            }
+            Map<String, String> body = record.getReference() == null ? null : outcome.apply(record.getReference());
+            if (body != null) {
+                return complete(record, body);
+            }
+        } else {
+            existing.ifPresent(idempotencyRecordRepository::delete);
+
+            // The unique constraint makes this claim the single owner across instances
+            String reference = referencePrefix == null ? null : referenceGenerator.next(referencePrefix);
+            record = new IdempotencyRecord(userId, idempotencyKey, requestHash, reference, null, leaseUntil(now));
+            try {
+                record = idempotencyRecordRepository.saveAndFlush(record);
+            } catch (DataIntegrityViolationException e) {
+                throw new IdempotencyConflictException("A request with this Idempotency-Key is still being processed");
+            }
+        }
+
+        Map<String, String> body;
+        try {
+            body = action.apply(record.getReference());
+        } catch (RuntimeException e) {
+            idempotencyRecordRepository.delete(record);
+            throw e;
+        }
+        return complete(record, body);
+    }
+
+    private StoredResponse complete(IdempotencyRecord record, Map<String, String> body) {
+        try {
+            record.setResponseBody(objectMapper.writeValueAsString(body));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot store idempotent response", e);
+        }
+        record.setLeaseUntil(null);
+        return stored(idempotencyRecordRepository.save(record));
+    }
+
+    private StoredResponse stored(IdempotencyRecord record) {
+        try {
+            return new StoredResponse(record.getRequestHash(),
+                    objectMapper.readValue(record.getResponseBody(), RESPONSE_TYPE), expiresAt(record));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Stored idempotent response is unreadable", e);
+        }
+    }
+
+    private Instant leaseUntil(Instant now) {
+        return now.plusSeconds(pendingLeaseSeconds);
+    }
+
+    private Instant expiresAt(IdempotencyRecord record) {
+        return record.getCreatedAt().plus(Duration.ofHours(ttlHours));
+    }
+
+    private static String hash(String request) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(request.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private record StoredResponse(String requestHash, Map<String, String> body, Instant expiresAt) {
+
+        Map<String, String> bodyFor(String requestHash) {
+            if (!this.requestHash.equals(requestHash)) {
+                throw new IdempotencyConflictException(
+                        "Idempotency-Key has already been used for a different request");
+            }
+            return body;
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.hng.wallet_service.services;
+
+import com.hng.wallet_service.archive.JournalArchive;
+import com.hng.wallet_service.repositories.JournalRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Keeps journal_postings partitioned by month: partitions are created a few
+ * months ahead so an insert never finds its month missing, and months older than
+ * detach-after-months are detached once the balance snapshots cover them or,
+ * with archive-expired, moved to the {@link JournalArchive} and dropped, so the
+ * journal's tables and indexes only span the retention window. Every instance
+ * schedules the job; a session advisory lock lets one run it at a time.
+ */
+@Service
+@DependsOn("databaseMigrations")
+@RequiredArgsConstructor
+public class JournalPartitionMaintainer {
+
+    private final JournalRepository journalRepository;
+    private final JournalArchive journalArchive;
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${wallet.journal.partitions-ahead:2}")
+    private int partitionsAhead;
+
+    // 0 keeps every month attached
+    @Value("${wallet.journal.detach-after-months:0}")
+    private int detachAfterMonths;
+
+    // Needs wallet.journal.archive-dir on storage shared by every instance;
+    // false leaves expired months in place as detached standalone tables
+    @Value("${wallet.journal.archive-expired:false}")
+    private boolean archiveExpired;
+
+    @PostConstruct
+    void init() {
+        createUpcomingPartitions();
+    }
+
+    @Scheduled(cron = "${wallet.journal.maintenance-cron:0 30 0 * * *}", zone = "UTC")
+    public void scheduledRun() {
+        // Held by the connection the callback runs on, so it needs no transaction around the DDL
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            if (!tryLock(connection, "pg_try_advisory_lock")) {
+                return null;
+            }
+            try {
+                createUpcomingPartitions();
+                if (archiveExpired) {
+                    archiveExpiredPartitions();
+                } else {
+                    detachExpiredPartitions();
+                }
+            } finally {
+                tryLock(connection, "pg_advisory_unlock");
+            }
+            return null;
+        });
+    }
+
+    private static boolean tryLock(Connection connection, String function) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(
+                "SELECT " + function + "(hashtext('journal_partition_maintenance'))");
+                ResultSet rs = statement.executeQuery()) {
+            return rs.next() && rs.getBoolean(1);
+        }
+    }
+
+    public void createUpcomingPartitions() {
+        YearMonth current = JournalRepository.monthOf(Instant.now());
+        for (int i = 0; i <= partitionsAhead; i++) {
+            journalRepository.createPartition(current.plusMonths(i));
+        }
+    }
+
+    /**
+     * Detaches every month that ended more than detach-after-months ago and
+     * returns them. The tables stay in place, named as by
+     * {@link JournalRepository#partitionName}, until they are archived.
+     */
+    public List<YearMonth> detachExpiredPartitions() {
+        List<YearMonth> detached = new ArrayList<>();
+        for (YearMonth month : expiredPartitions()) {
+            try {
+                journalRepository.detachPartition(month);
+                detached.add(month);
+                System.out.println("Detached journal partition " + JournalRepository.partitionName(month));
+            } catch (RuntimeException e) {
+                System.err.println("Failed to detach journal partition " + JournalRepository.partitionName(month)
+                        + ": " + e.getMessage());
+            }
+        }
+        return detached;
+    }
+
+    /**
+     * Writes every expired or detached month to its archive segment, oldest
+     * first, then drops the tables of the months every instance has loaded and
+     * returns those. A table stays, attached or not, until then; readers take the
+     * month from the archive once their own instance has loaded it. A month whose
+     * archiving fails holds back the newer ones until a later run.
+     */
+    public List<YearMonth> archiveExpiredPartitions() {
+        TreeSet<YearMonth> candidates = new TreeSet<>(expiredPartitions());
+        candidates.addAll(journalRepository.findDetachedPartitions());
+        TreeSet<YearMonth> archived = new TreeSet<>(journalArchive.registeredMonths());
+
+        for (YearMonth month : candidates) {
+            if (archived.contains(month)) {
+                continue;
+            }
+            try {
+                long postings = journalArchive.archive(month);
+                archived.add(month);
+                System.out.println("Archived journal month " + month + ": " + postings + " postings");
+            } catch (RuntimeException e) {
+                System.err.println("Failed to archive journal month " + month + ": " + e.getMessage());
+                break;
+            }
+        }
+
+        List<YearMonth> dropped = new ArrayList<>();
+        List<YearMonth> attached = journalRepository.findAttachedPartitions();
+        for (YearMonth month : candidates) {
+            if (!archived.contains(month) || !journalArchive.isLoadedEverywhere(month)) {
+                break;
+            }
+            try {
+                if (attached.contains(month)) {
+                    journalRepository.detachPartition(month);
+                }
+                journalRepository.dropDetachedPartition(month);
+                dropped.add(month);
+                System.out.println("Dropped archived journal partition " + JournalRepository.partitionName(month));
+            } catch (RuntimeException e) {
+                System.err.println("Failed to drop archived journal partition "
+                        + JournalRepository.partitionName(month) + ": " + e.getMessage());
+                break;
+            }
+        }
+        return dropped;
+    }
+
+    // Attached months that ended more than detach-after-months ago, oldest first
+    private List<YearMonth> expiredPartitions() {
+        if (detachAfterMonths <= 0) {
+            return List.of();
+        }
+        YearMonth oldestKept = JournalRepository.monthOf(Instant.now()).minusMonths(detachAfterMonths);
+
+        // Point-in-time balances before a detached month come from its snapshots
+        Date snapshotted = jdbcTemplate.queryForObject(
+                "SELECT last_date FROM balance_snapshot_checkpoint WHERE id = 1", Date.class);
+        LocalDate lastSnapshotDay = snapshotted == null ? LocalDate.MIN : snapshotted.toLocalDate();
+
+        return journalRepository.findAttachedPartitions().stream()
+                .filter(month -> month.isBefore(oldestKept) && !month.atEndOfMonth().isAfter(lastSnapshotDay))
+                .sorted()
+                .toList();
+    }
+}
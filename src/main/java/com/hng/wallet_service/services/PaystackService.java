@@ -1,44 +1,70 @@
 package com.hng.wallet_service.services;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hng.wallet_service.clients.PaystackClient;
+import com.hng.wallet_service.ledger.LedgerEngine;
+import com.hng.wallet_service.ledger.LedgerEntry;
+import com.hng.wallet_service.models.JournalEntry;
 import com.hng.wallet_service.models.Transaction;
 import com.hng.wallet_service.models.Wallet;
 import com.hng.wallet_service.models.enums.TransactionStatus;
 import com.hng.wallet_service.models.enums.TransactionType;
 import com.hng.wallet_service.repositories.TransactionRepository;
 import com.hng.wallet_service.repositories.WalletRepository;
+import com.hng.wallet_service.utils.ReferenceGenerator;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.HttpMethod;
-import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
-import org.springframework.web.client.RestTemplate;
 
 import javax.crypto.Mac;
 import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.nio.charset.StandardCharsets;
-import java.security.InvalidKeyException;
-import java.security.NoSuchAlgorithmException;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.List;
 import java.util.Map;
 
 @Service
 @RequiredArgsConstructor
 public class PaystackService {
 
-    @Value("${paystack.secret-key}")
-    private String paystackSecretKey;
+    private static final String WEBHOOK_HMAC_ALGORITHM = "HmacSHA512";
+    private static final int SIGNATURE_HEX_LENGTH = 128;
 
     @Value("${paystack.webhook-secret}")
     private String webhookSecret;
 
     private final WalletRepository walletRepository;
     private final TransactionRepository transactionRepository;
-    private final RestTemplate restTemplate = new RestTemplate();
+    private final WalletBalanceService walletBalanceService;
+    private final TransactionService transactionService;
+    private final LedgerEngine ledgerEngine;
+    private final ObjectMapper objectMapper;
+    private final PaystackClient paystackClient;
+    private final ReferenceGenerator referenceGenerator;
 
-    @Transactional
+    private SecretKeySpec webhookKey;
+
+    // One Mac per thread: creating one per webhook costs more than the HMAC itself
+    private final ThreadLocal<Mac> webhookMac = ThreadLocal.withInitial(this::newWebhookMac);
+
+    @PostConstruct
+    void init() {
+        webhookKey = new SecretKeySpec(webhookSecret.getBytes(StandardCharsets.UTF_8), WEBHOOK_HMAC_ALGORITHM);
+    }
+
+    /**
+     * Starts a deposit in three steps so no JDBC connection is held while Paystack
+     * is called: record the PENDING transaction, call Paystack, and mark the
+     * transaction FAILED if the call did not go through.
+     */
     public Map<String, String> initializeDeposit(Long userId, BigDecimal amount) {
         Wallet wallet = walletRepository.findByUserId(userId)
                 .orElseThrow(() -> new RuntimeException("Wallet not found"));
@@ -56,8 +82,8 @@ public class PaystackService {
         // Convert amount to kobo (Paystack uses kobo)
         long amountInKobo = amount.multiply(BigDecimal.valueOf(100)).longValue();
 
-        // Create pending transaction
-        String reference = "TXN_" + System.currentTimeMillis() + "_" + userId;
+        // Create pending transaction (its own short transaction)
+        String reference = referenceGenerator.next("TXN");
         Transaction transaction = new Transaction();
         transaction.setReference(reference);
         transaction.setWallet(wallet);
@@ -68,46 +94,38 @@ public class PaystackService {
         transactionRepository.save(transaction);
 
         // Call Paystack API
-        String url = "https://api.paystack.co/transaction/initialize";
-
-        HttpHeaders headers = new HttpHeaders();
-        headers.set("Authorization", "Bearer " + paystackSecretKey);
-        headers.set("Content-Type", "application/json");
-
-        Map<String, Object> requestBody = Map.of(
-                "email", wallet.getUser().getEmail(),
-                "amount", amountInKobo,
-                "reference", reference);
-
-        HttpEntity<Map<String, Object>> request = new HttpEntity<>(requestBody, headers);
-
-        ResponseEntity<Map> response = restTemplate.exchange(
-                url,
-                HttpMethod.POST,
-                request,
-                Map.class);
-
-        Map<String, Object> data = (Map<String, Object>) response.getBody().get("data");
+        String authorizationUrl;
+        try {
+            authorizationUrl = paystackClient.initializeTransaction(wallet.getUser().getEmail(), amountInKobo, reference);
+        } catch (RuntimeException e) {
+            // The customer never got a checkout link, so this deposit can't complete
+            transactionRepository.updateStatusIfPending(reference, TransactionStatus.FAILED);
+            throw e;
+        }
 
         return Map.of(
                 "reference", reference,
-                "authorization_url", (String) data.get("authorization_url"));
+                "authorization_url", authorizationUrl);
     }
 
+    // Applies one verified webhook event; called by WebhookInboxService
     @Transactional
-    public void handleWebhook(String signature, String payload) {
+    public void processWebhookEvent(String payload) {
 
         // Parse payload
-        Map<String, Object> event = parsePayload(payload);
-        String eventType = (String) event.get("event");
+        WebhookEvent event = parseWebhookEvent(payload.getBytes(StandardCharsets.UTF_8));
+        applyChargeEvent(event.event(), event.reference(), event.status());
+    }
 
+    /**
+     * Settles a deposit from a charge event. Webhooks and the deposit reconciler
+     * both come through here; the row lock stops the two crediting it twice.
+     */
+    @Transactional
+    public void applyChargeEvent(String eventType, String reference, String status) {
         if ("charge.success".equals(eventType)) {
-            Map<String, Object> data = (Map<String, Object>) event.get("data");
-            String reference = (String) data.get("reference");
-            String status = (String) data.get("status");
-
             // Find transaction
-            Transaction transaction = transactionRepository.findByReference(reference)
+            Transaction transaction = transactionRepository.findByReferenceForUpdate(reference)
                     .orElseThrow(() -> new RuntimeException("Transaction not found"));
 
             // Idempotency check
@@ -115,26 +133,29 @@ public class PaystackService {
                 return; // Already processed
             }
 
-            if ("success".equals(status)) {
+            if ("success".equals(status) && ledgerEngine.isEnabled()) {
+                // The engine credits the wallet; replication marks the transaction SUCCESS
+                ledgerEngine.post(List.of(new LedgerEntry(reference, transaction.getWallet().getId(), null,
+                        TransactionType.DEPOSIT, transaction.getAmount())));
+            } else if ("success".equals(status)) {
+                // Credit wallet (lands on a stripe for hot wallets)
+                Long walletId = transaction.getWallet().getId();
+                BigDecimal balanceAfter = walletBalanceService.credit(walletId, transaction.getAmount());
+                transactionService.postJournalEntries(List.of(
+                        JournalEntry.deposit(reference, walletId, transaction.getAmount(), balanceAfter)));
+
                 // Update transaction status
                 transaction.setStatus(TransactionStatus.SUCCESS);
                 transactionRepository.save(transaction);
-
-                // Credit wallet
-                Wallet wallet = transaction.getWallet();
-                wallet.setBalance(wallet.getBalance().add(transaction.getAmount()));
-                walletRepository.save(wallet);
             } else {
                 transaction.setStatus(TransactionStatus.FAILED);
                 transactionRepository.save(transaction);
             }
         } else if ("charge.failed".equals(eventType)) {
             // Handle failed charge events
-            Map<String, Object> data = (Map<String, Object>) event.get("data");
-            String reference = (String) data.get("reference");
 
             // Find transaction
-            Transaction transaction = transactionRepository.findByReference(reference)
+            Transaction transaction = transactionRepository.findByReferenceForUpdate(reference)
                     .orElseThrow(() -> new RuntimeException("Transaction not found"));
 
             // Idempotency check - don't update if already processed
@@ -151,11 +172,9 @@ public class PaystackService {
             System.out.println("Transaction failed: " + reference);
         } else if ("charge.abandoned".equals(eventType)) {
             // Handle abandoned charge events (user closed payment page)
-            Map<String, Object> data = (Map<String, Object>) event.get("data");
-            String reference = (String) data.get("reference");
 
             // Find transaction
-            Transaction transaction = transactionRepository.findByReference(reference)
+            Transaction transaction = transactionRepository.findByReferenceForUpdate(reference)
                     .orElseThrow(() -> new RuntimeException("Transaction not found"));
 
             // Idempotency check - don't update if already processed
@@ -173,41 +192,85 @@ public class PaystackService {
         }
     }
 
-    private boolean validateSignature(String signature, String payload) {
+    /**
+     * Checks x-paystack-signature, the hex HMAC-SHA512 of the raw body, before any
+     * JSON is looked at. The comparison runs in constant time.
+     */
+    public boolean validateSignature(String signature, byte[] payload) {
+        if (signature == null || signature.length() != SIGNATURE_HEX_LENGTH) {
+            return false;
+        }
+        byte[] provided;
         try {
-            Mac mac = Mac.getInstance("HmacSHA512");
-            SecretKeySpec secretKeySpec = new SecretKeySpec(
-                    webhookSecret.getBytes(StandardCharsets.UTF_8),
-                    "HmacSHA512");
-            mac.init(secretKeySpec);
-
-            byte[] hash = mac.doFinal(payload.getBytes(StandardCharsets.UTF_8));
-            StringBuilder hexString = new StringBuilder();
-            for (byte b : hash) {
-                String hex = Integer.toHexString(0xff & b);
-                if (hex.length() == 1)
-                    hexString.append('0');
-                hexString.append(hex);
-            }
-
-            return hexString.toString().equals(signature);
-        } catch (NoSuchAlgorithmException | InvalidKeyException e) {
+            provided = HexFormat.of().parseHex(signature);
+        } catch (IllegalArgumentException e) {
             return false;
         }
+        return MessageDigest.isEqual(webhookMac.get().doFinal(payload), provided);
     }
 
-    private Map<String, Object> parsePayload(String payload) {
-        // Simple JSON parsing - in production use Jackson
-        try {
-            com.fasterxml.jackson.databind.ObjectMapper mapper = new com.fasterxml.jackson.databind.ObjectMapper();
-            return mapper.readValue(payload, Map.class);
-        } catch (Exception e) {
+    /**
+     * Pulls the few fields the service acts on out of a webhook payload with a
+     * streaming parser, skipping everything else without materialising it.
+     */
+    public WebhookEvent parseWebhookEvent(byte[] payload) {
+        String event = null;
+        String id = null;
+        String reference = null;
+        String status = null;
+        try (JsonParser parser = objectMapper.getFactory().createParser(payload)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new RuntimeException("Failed to parse webhook payload");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if ("event".equals(field) && value == JsonToken.VALUE_STRING) {
+                    event = parser.getText();
+                } else if ("data".equals(field) && value == JsonToken.START_OBJECT) {
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        String dataField = parser.currentName();
+                        JsonToken dataValue = parser.nextToken();
+                        if (dataValue.isScalarValue() && dataValue != JsonToken.VALUE_NULL) {
+                            switch (dataField) {
+                                case "id" -> id = parser.getValueAsString();
+                                case "reference" -> reference = parser.getText();
+                                case "status" -> status = parser.getText();
+                                default -> {
+                                }
+                            }
+                        } else {
+                            parser.skipChildren();
+                        }
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        } catch (IOException e) {
             throw new RuntimeException("Failed to parse webhook payload");
         }
+        if (event == null) {
+            throw new RuntimeException("Failed to parse webhook payload");
+        }
+        return new WebhookEvent(event, id, reference, status);
+    }
+
+    private Mac newWebhookMac() {
+        try {
+            Mac mac = Mac.getInstance(WEBHOOK_HMAC_ALGORITHM);
+            mac.init(webhookKey);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Failed to initialise webhook signature check", e);
+        }
     }
 
     public Transaction getDepositStatus(String reference) {
         return transactionRepository.findByReference(reference)
                 .orElseThrow(() -> new RuntimeException("Transaction not found"));
     }
+
+    public record WebhookEvent(String event, String id, String reference, String status) {
+    }
 }
@@ -0,0 +1,185 @@
+package com.hng.wallet_service.services;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hng.wallet_service.archive.JournalArchive;
+import com.hng.wallet_service.exceptions.InvalidAmountException;
+import com.hng.wallet_service.models.JournalEntry;
+import com.hng.wallet_service.models.enums.TransactionStatus;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * Streams a wallet's statement straight from a forward-only JDBC cursor to the
+ * response. Postgres only uses a server-side cursor when autocommit is off, so
+ * each export runs in a read-only transaction that lasts exactly as long as the
+ * stream, and at most one fetch batch is held in memory. Archived months are
+ * streamed from the journal archive first, a block at a time.
+ */
+@Service
+@RequiredArgsConstructor
+public class StatementExportService {
+
+    // Only the month partitions the range touches are scanned
+    private static final String STATEMENT_QUERY =
+            "SELECT reference, type, abs(amount) AS amount, 'SUCCESS' AS status, counterpart_wallet_id, "
+                    + "posted_at AS created_at FROM journal_postings "
+                    + "WHERE wallet_id = ? AND posted_at >= ? AND posted_at < ? "
+                    + "ORDER BY posted_at, journal_id, leg";
+
+    private final DataSource dataSource;
+    private final PlatformTransactionManager transactionManager;
+    private final ObjectMapper objectMapper;
+    private final JournalArchive journalArchive;
+
+    @Value("${wallet.statement.fetch-size:500}")
+    private int fetchSize;
+
+    private JdbcTemplate cursorTemplate;
+    private TransactionTemplate readOnlyTransaction;
+
+    @PostConstruct
+    void init() {
+        cursorTemplate = new JdbcTemplate(dataSource);
+        cursorTemplate.setFetchSize(fetchSize);
+        readOnlyTransaction = new TransactionTemplate(transactionManager);
+        readOnlyTransaction.setReadOnly(true);
+    }
+
+    public void export(Long walletId, Instant from, Instant to, StatementFormat format, OutputStream out) {
+        readOnlyTransaction.executeWithoutResult(status -> {
+            try {
+                Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+                if (format == StatementFormat.CSV) {
+                    writeCsv(walletId, from, to, writer);
+                } else {
+                    writeNdjson(walletId, from, to, writer);
+                }
+                writer.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private void writeNdjson(Long walletId, Instant from, Instant to, Writer writer) throws IOException {
+        JsonGenerator json = objectMapper.getFactory().createGenerator(writer);
+        json.setRootValueSeparator(null);
+        streamRows(walletId, from, to, row -> {
+            json.writeStartObject();
+            json.writeStringField("reference", row.reference());
+            json.writeStringField("type", row.type().toLowerCase());
+            json.writeNumberField("amount", row.amount());
+            json.writeStringField("status", row.status().toLowerCase());
+            if (row.counterpartWalletId() == null) {
+                json.writeNullField("counterpart_wallet_id");
+            } else {
+                json.writeNumberField("counterpart_wallet_id", row.counterpartWalletId());
+            }
+            json.writeStringField("created_at", row.createdAt().toString());
+            json.writeEndObject();
+            json.writeRaw('\n');
+        });
+        json.flush();
+    }
+
+    private void writeCsv(Long walletId, Instant from, Instant to, Writer writer) throws IOException {
+        writer.write("reference,type,amount,status,counterpart_wallet_id,created_at\n");
+        streamRows(walletId, from, to, row -> {
+            writer.write(csvField(row.reference()));
+            writer.write(',');
+            writer.write(row.type().toLowerCase());
+            writer.write(',');
+            writer.write(row.amount().toPlainString());
+            writer.write(',');
+            writer.write(row.status().toLowerCase());
+            writer.write(',');
+            writer.write(row.counterpartWalletId() == null ? "" : Long.toString(row.counterpartWalletId()));
+            writer.write(',');
+            writer.write(row.createdAt().toString());
+            writer.write('\n');
+        });
+    }
+
+    private void streamRows(Long walletId, Instant from, Instant to, RowWriter rowWriter) {
+        Instant archivedUntil = journalArchive.archivedUntil();
+        Instant archiveTo = to.isBefore(archivedUntil) ? to : archivedUntil;
+        Instant tablesFrom = from.isAfter(archivedUntil) ? from : archivedUntil;
+        journalArchive.forEachPosting(walletId, from, archiveTo, archived -> {
+            JournalEntry.Posting posting = archived.posting();
+            write(rowWriter, new StatementRow(posting.reference(), posting.type().name(), posting.amount().abs(),
+                    TransactionStatus.SUCCESS.name(), posting.counterpartWalletId(), archived.postedAt()));
+        });
+        cursorTemplate.query(
+                STATEMENT_QUERY,
+                rs -> {
+                    long counterpart = rs.getLong("counterpart_wallet_id");
+                    Long counterpartWalletId = rs.wasNull() ? null : counterpart;
+                    write(rowWriter, new StatementRow(rs.getString("reference"), rs.getString("type"),
+                            rs.getBigDecimal("amount"), rs.getString("status"), counterpartWalletId, createdAt(rs)));
+                },
+                walletId,
+                tablesFrom.atOffset(ZoneOffset.UTC),
+                to.atOffset(ZoneOffset.UTC));
+    }
+
+    private static void write(RowWriter rowWriter, StatementRow row) {
+        try {
+            rowWriter.write(row);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Instant createdAt(ResultSet rs) throws SQLException {
+        return rs.getObject("created_at", OffsetDateTime.class).toInstant();
+    }
+
+    private static String csvField(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    private record StatementRow(String reference, String type, BigDecimal amount, String status,
+            Long counterpartWalletId, Instant createdAt) {
+    }
+
+    @FunctionalInterface
+    private interface RowWriter {
+        void write(StatementRow row) throws IOException;
+    }
+
+    public enum StatementFormat {
+        NDJSON, CSV;
+
+        public static StatementFormat parse(String format) {
+            try {
+                return valueOf(format.toUpperCase());
+            } catch (IllegalArgumentException e) {
+                throw new InvalidAmountException("Invalid statement format. Use ndjson or csv");
+            }
+        }
+    }
+}
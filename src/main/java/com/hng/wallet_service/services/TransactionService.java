@@ -1,22 +1,47 @@
 package com.hng.wallet_service.services;
 
+import com.hng.wallet_service.archive.JournalArchive;
+import com.hng.wallet_service.dto.TransactionSummaryDTO;
+import com.hng.wallet_service.exceptions.InvalidAmountException;
+import com.hng.wallet_service.models.JournalEntry;
 import com.hng.wallet_service.models.Transaction;
 import com.hng.wallet_service.models.Wallet;
 import com.hng.wallet_service.models.enums.TransactionStatus;
 import com.hng.wallet_service.models.enums.TransactionType;
+import com.hng.wallet_service.repositories.JournalRepository;
 import com.hng.wallet_service.repositories.TransactionRepository;
+import com.hng.wallet_service.utils.ReferenceGenerator;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
 import java.util.List;
 
+/**
+ * Deposits and their status live in the transactions table; every movement of
+ * money is a balanced entry in the journal, and wallet history is read from there,
+ * continuing into the archive once the attached months run out.
+ */
 @Service
 @RequiredArgsConstructor
 public class TransactionService {
 
     private final TransactionRepository transactionRepository;
+    private final JournalRepository journalRepository;
+    private final JournalArchive journalArchive;
+    private final ReferenceGenerator referenceGenerator;
+
+    @Value("${wallet.transactions.page-size:50}")
+    private int defaultPageSize;
+
+    @Value("${wallet.transactions.max-page-size:200}")
+    private int maxPageSize;
 
     @Transactional
     public Transaction createTransaction(
@@ -26,6 +51,33 @@ public class TransactionService {
             BigDecimal amount,
             TransactionStatus status,
             Long counterpartyWalletId) {
+        return transactionRepository.save(
+                buildTransaction(reference, wallet, type, amount, status, counterpartyWalletId));
+    }
+
+    /**
+     * Appends entries to the journal in one statement, all posted now. Ids are
+     * time-ordered, so entries keep their order within the call.
+     */
+    @Transactional
+    public void postJournalEntries(List<JournalEntry> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        long[] journalIds = new long[entries.size()];
+        for (int i = 0; i < journalIds.length; i++) {
+            journalIds[i] = referenceGenerator.nextId();
+        }
+        journalRepository.insert(journalIds, entries, Instant.now());
+    }
+
+    public Transaction buildTransaction(
+            String reference,
+            Wallet wallet,
+            TransactionType type,
+            BigDecimal amount,
+            TransactionStatus status,
+            Long counterpartyWalletId) {
         Transaction transaction = new Transaction();
         transaction.setReference(reference);
         transaction.setWallet(wallet);
@@ -33,11 +85,42 @@ public class TransactionService {
         transaction.setAmount(amount);
         transaction.setStatus(status);
         transaction.setCounterpartWalletId(counterpartyWalletId);
-        return transactionRepository.save(transaction);
+        return transaction;
     }
 
-    public List<Transaction> getTransactionHistory(Long walletId) {
-        return transactionRepository.findByWalletIdOrderByCreatedAtDesc(walletId);
+    @Transactional(readOnly = true)
+    public TransactionPage getTransactionPage(Long walletId, String cursor, Integer limit) {
+        int pageSize = limit == null ? defaultPageSize : limit;
+        if (pageSize < 1 || pageSize > maxPageSize) {
+            throw new InvalidAmountException("Page size must be between 1 and " + maxPageSize);
+        }
+
+        // Fetch one extra row to learn whether another page follows. Postings before
+        // archivedUntil come from the archive even while their month is still attached
+        PageCursor position = cursor == null || cursor.isBlank() ? null : PageCursor.decode(cursor);
+        Instant archivedUntil = journalArchive.archivedUntil();
+        List<TransactionSummaryDTO> rows = new ArrayList<>();
+        if (position == null) {
+            rows.addAll(journalRepository.findFirstPage(walletId, archivedUntil, pageSize + 1));
+        } else if (!position.postedAt().isBefore(archivedUntil)) {
+            rows.addAll(journalRepository.findPageBefore(walletId, archivedUntil, position.postedAt(),
+                    position.journalId(), position.leg(), pageSize + 1));
+        }
+
+        if (rows.size() <= pageSize) {
+            if (position == null || !position.postedAt().isBefore(archivedUntil)) {
+                position = new PageCursor(archivedUntil, 0, 0);
+            }
+            rows.addAll(journalArchive.findPageBefore(walletId, position.postedAt(), position.journalId(),
+                    position.leg(), pageSize + 1 - rows.size()));
+        }
+
+        if (rows.size() <= pageSize) {
+            return new TransactionPage(rows, null);
+        }
+        List<TransactionSummaryDTO> page = rows.subList(0, pageSize);
+        TransactionSummaryDTO last = page.get(pageSize - 1);
+        return new TransactionPage(page, new PageCursor(last.getCreatedAt(), last.getId(), last.getLeg()).encode());
     }
 
     public Transaction getTransactionByReference(String reference) {
@@ -48,4 +131,29 @@ public class TransactionService {
     public boolean transactionExists(String reference) {
         return transactionRepository.existsByReference(reference);
     }
+
+    public record TransactionPage(List<TransactionSummaryDTO> transactions, String nextCursor) {
+    }
+
+    // Opaque to clients: base64url of "<postedAt>|<journalId>|<leg>" of the last posting served
+    private record PageCursor(Instant postedAt, long journalId, int leg) {
+
+        String encode() {
+            String raw = postedAt + "|" + journalId + "|" + leg;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static PageCursor decode(String cursor) {
+            try {
+                String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+                String[] parts = raw.split("\\|");
+                return new PageCursor(
+                        Instant.parse(parts[0]),
+                        Long.parseLong(parts[1]),
+                        Integer.parseInt(parts[2]));
+            } catch (RuntimeException e) {
+                throw new InvalidAmountException("Invalid cursor");
+            }
+        }
+    }
 }
@@ -0,0 +1,200 @@
+package com.hng.wallet_service.services;
+
+import com.hng.wallet_service.exceptions.InsufficientBalanceException;
+import com.hng.wallet_service.models.JournalEntry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalesces concurrent transfers into micro-batches that share one DB transaction,
+ * so a burst of requests pays for one commit instead of one each. Every wallet a
+ * group touches is locked up front in ascending id order; an item that fails its
+ * balance check is reported to its own caller without aborting the rest.
+ */
+@Component
+@RequiredArgsConstructor
+public class TransferGroupCommitter {
+
+    private static final String LOCK_WALLETS_SQL = "SELECT id FROM wallet WHERE id IN (:ids) ORDER BY id FOR UPDATE";
+
+    private final WalletBalanceService walletBalanceService;
+    private final TransactionService transactionService;
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+
+    @Value("${wallet.transfer.group-commit.enabled:false}")
+    private boolean enabled;
+
+    @Value("${wallet.transfer.group-commit.window-ms:2}")
+    private long windowMs;
+
+    @Value("${wallet.transfer.group-commit.max-batch:64}")
+    private int maxBatch;
+
+    private final BlockingQueue<PendingTransfer> queue = new LinkedBlockingQueue<>();
+    private TransactionTemplate transactionTemplate;
+    private Thread worker;
+    private volatile boolean running;
+
+    @PostConstruct
+    void start() {
+        if (!enabled) {
+            return;
+        }
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        running = true;
+        worker = new Thread(this::run, "transfer-group-commit");
+        worker.setDaemon(true);
+        worker.start();
+        System.out.println("Transfer group commit enabled (window " + windowMs + " ms, max " + maxBatch + " per group)");
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        running = false;
+        if (worker != null) {
+            worker.join(TimeUnit.SECONDS.toMillis(10));
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Queues a transfer and blocks until the group containing it has committed.
+     * Failures are rethrown exactly as the single-transaction path would throw them.
+     */
+    public void submit(Long senderWalletId, Long recipientWalletId, BigDecimal amount, String reference) {
+        if (!running) {
+            walletBalanceService.postTransfer(senderWalletId, recipientWalletId, amount, reference);
+            return;
+        }
+
+        PendingTransfer transfer = new PendingTransfer(senderWalletId, recipientWalletId, amount, reference,
+                new CompletableFuture<>());
+        queue.add(transfer);
+        try {
+            transfer.result().join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private void run() {
+        List<PendingTransfer> group = new ArrayList<>(maxBatch);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingTransfer first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                group.add(first);
+
+                // Keep collecting until the window closes or the group is full
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(windowMs);
+                while (group.size() < maxBatch) {
+                    long remaining = deadline - System.nanoTime();
+                    PendingTransfer next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    group.add(next);
+                }
+
+                commitGroup(group);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (RuntimeException e) {
+                System.err.println("Transfer group commit worker error: " + e.getMessage());
+                group.forEach(transfer -> transfer.result().completeExceptionally(e));
+            } finally {
+                group.clear();
+            }
+        }
+    }
+
+    private void commitGroup(List<PendingTransfer> group) {
+        RuntimeException[] failures = new RuntimeException[group.size()];
+
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                TreeSet<Long> walletIds = new TreeSet<>();
+                for (PendingTransfer transfer : group) {
+                    walletIds.add(transfer.senderWalletId());
+                    walletIds.add(transfer.recipientWalletId());
+                }
+                jdbcTemplate.queryForList(LOCK_WALLETS_SQL, Map.of("ids", walletIds), Long.class);
+
+                // Items apply in arrival order, so a transfer can spend money credited
+                // by an earlier one in the same group
+                List<JournalEntry> entries = new ArrayList<>(group.size());
+                for (int i = 0; i < group.size(); i++) {
+                    PendingTransfer transfer = group.get(i);
+                    BigDecimal senderBalance;
+                    try {
+                        senderBalance = walletBalanceService.debit(transfer.senderWalletId(), transfer.amount());
+                    } catch (InsufficientBalanceException e) {
+                        failures[i] = e;
+                        continue;
+                    }
+                    BigDecimal recipientBalance = walletBalanceService.credit(transfer.recipientWalletId(),
+                            transfer.amount());
+                    entries.add(JournalEntry.transfer(transfer.reference(), transfer.senderWalletId(),
+                            transfer.recipientWalletId(), transfer.amount(), senderBalance, recipientBalance));
+                }
+                transactionService.postJournalEntries(entries);
+            });
+        } catch (RuntimeException e) {
+            // Something beyond a balance check failed (a deadlock with a stripe credit,
+            // a lost connection, ...): give every item its own transaction instead
+            System.err.println("Group commit of " + group.size() + " transfers failed, retrying individually: "
+                    + e.getMessage());
+            group.forEach(this::commitAlone);
+            return;
+        }
+
+        for (int i = 0; i < group.size(); i++) {
+            if (failures[i] == null) {
+                group.get(i).result().complete(null);
+            } else {
+                group.get(i).result().completeExceptionally(failures[i]);
+            }
+        }
+    }
+
+    private void commitAlone(PendingTransfer transfer) {
+        try {
+            walletBalanceService.postTransfer(transfer.senderWalletId(), transfer.recipientWalletId(),
+                    transfer.amount(), transfer.reference());
+            transfer.result().complete(null);
+        } catch (RuntimeException e) {
+            transfer.result().completeExceptionally(e);
+        }
+    }
+
+    private record PendingTransfer(Long senderWalletId, Long recipientWalletId, BigDecimal amount, String reference,
+            CompletableFuture<Void> result) {
+    }
+}
@@ -0,0 +1,407 @@
+package com.hng.wallet_service.services;
+
+import com.hng.wallet_service.exceptions.TransferLimitExceededException;
+import com.hng.wallet_service.exceptions.WalletNotFoundException;
+import com.hng.wallet_service.ledger.LedgerEngine;
+import com.hng.wallet_service.models.enums.WalletTier;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-wallet transfer limits by {@link WalletTier}: how many transfers and how
+ * much money a wallet may send per hour and per day (0 = no limit). Each wallet's
+ * recent outgoing transfers are held in memory as sliding windows over rings of
+ * time buckets, so a check is a few array updates under the wallet's own lock.
+ * A wallet's windows are loaded from the journal on first use and reloaded once
+ * they are refresh-seconds old, which also picks up transfers made through other
+ * instances; between loads the database is not read. Reservations not yet posted
+ * aren't in the journal, so a reload carries them over into the new windows; so
+ * are transfers the ledger engine has taken but not yet replicated to the journal.
+ */
+@Service
+@RequiredArgsConstructor
+public class TransferLimits {
+
+    // The hour slides in 5-minute steps, the day in 1-hour steps
+    private static final int HOUR_BUCKETS = 12;
+    private static final long HOUR_BUCKET_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    private static final int DAY_BUCKETS = 24;
+    private static final long DAY_BUCKET_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    // The wallet row comes back even when it sent nothing in the last day
+    private static final String RECENT_TRANSFERS_SQL = "SELECT w.tier, p.posted_at, p.amount FROM wallet w "
+            + "LEFT JOIN journal_postings p ON p.wallet_id = w.id AND p.type = 'TRANSFER_OUT' AND p.posted_at >= ? "
+            + "WHERE w.id = ?";
+
+    private static final Reservation NONE = new Reservation(null, 0, 0, 0);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final LedgerEngine ledgerEngine;
+    private final ConcurrentHashMap<Long, WalletWindows> wallets = new ConcurrentHashMap<>();
+
+    @Value("${wallet.limits.enabled:true}")
+    private boolean enabled;
+
+    @Value("${wallet.limits.refresh-seconds:60}")
+    private long refreshSeconds;
+
+    @Value("${wallet.limits.basic.hourly-count:10}")
+    private long basicHourlyCount;
+
+    @Value("${wallet.limits.basic.hourly-amount:50000}")
+    private BigDecimal basicHourlyAmount;
+
+    @Value("${wallet.limits.basic.daily-count:30}")
+    private long basicDailyCount;
+
+    @Value("${wallet.limits.basic.daily-amount:200000}")
+    private BigDecimal basicDailyAmount;
+
+    @Value("${wallet.limits.standard.hourly-count:30}")
+    private long standardHourlyCount;
+
+    @Value("${wallet.limits.standard.hourly-amount:500000}")
+    private BigDecimal standardHourlyAmount;
+
+    @Value("${wallet.limits.standard.daily-count:100}")
+    private long standardDailyCount;
+
+    @Value("${wallet.limits.standard.daily-amount:2000000}")
+    private BigDecimal standardDailyAmount;
+
+    @Value("${wallet.limits.premium.hourly-count:0}")
+    private long premiumHourlyCount;
+
+    @Value("${wallet.limits.premium.hourly-amount:5000000}")
+    private BigDecimal premiumHourlyAmount;
+
+    @Value("${wallet.limits.premium.daily-count:0}")
+    private long premiumDailyCount;
+
+    @Value("${wallet.limits.premium.daily-amount:20000000}")
+    private BigDecimal premiumDailyAmount;
+
+    private Policy[] policies;
+    private long refreshMillis;
+
+    @PostConstruct
+    void init() {
+        policies = new Policy[WalletTier.values().length];
+        policies[WalletTier.BASIC.ordinal()] = new Policy(basicHourlyCount, toMinor(basicHourlyAmount),
+                basicDailyCount, toMinor(basicDailyAmount));
+        policies[WalletTier.STANDARD.ordinal()] = new Policy(standardHourlyCount, toMinor(standardHourlyAmount),
+                standardDailyCount, toMinor(standardDailyAmount));
+        policies[WalletTier.PREMIUM.ordinal()] = new Policy(premiumHourlyCount, toMinor(premiumHourlyAmount),
+                premiumDailyCount, toMinor(premiumDailyAmount));
+        refreshMillis = TimeUnit.SECONDS.toMillis(refreshSeconds);
+    }
+
+    /**
+     * Counts {@code transfers} sending {@code amount} in total against the
+     * wallet's limits, before they are posted, so concurrent transfers can't pass
+     * a limit together. Throws {@link TransferLimitExceededException}, counting
+     * nothing, if a limit would be passed. Mark the reservation posted once the
+     * transfers are, or release it if they are not posted after all.
+     */
+    public Reservation reserve(Long walletId, int transfers, BigDecimal amount) {
+        if (!enabled) {
+            return NONE;
+        }
+        long minor = toMinor(amount);
+        while (true) {
+            long now = System.currentTimeMillis();
+            WalletWindows windows = wallets.get(walletId);
+            if (windows == null || now - windows.loadedAt >= refreshMillis) {
+                // One load per wallet however many callers find its windows missing or stale
+                windows = wallets.compute(walletId, (id, current) ->
+                        current == null || now - current.loadedAt >= refreshMillis ? load(id, current, now) : current);
+            }
+
+            synchronized (windows) {
+                if (windows.retired) {
+                    continue;
+                }
+                String exceeded = windows.tryAdd(now, transfers, minor, policies[windows.tier.ordinal()]);
+                if (exceeded != null) {
+                    throw new TransferLimitExceededException(exceeded);
+                }
+                Reservation reservation = new Reservation(windows, now, transfers, minor);
+                windows.pending.add(reservation);
+                return reservation;
+            }
+        }
+    }
+
+    // Windows past their refresh would be reloaded on next use anyway, unless they
+    // still hold reservations in flight
+    @Scheduled(fixedDelayString = "${wallet.limits.sweep-interval-ms:60000}")
+    public void evictStale() {
+        long now = System.currentTimeMillis();
+        for (Long walletId : wallets.keySet()) {
+            wallets.computeIfPresent(walletId, (id, windows) -> {
+                synchronized (windows) {
+                    dropReplicated(windows);
+                    if (now - windows.loadedAt < refreshMillis || !windows.pending.isEmpty()) {
+                        return windows;
+                    }
+                    windows.retired = true;
+                    return null;
+                }
+            });
+        }
+    }
+
+    // Replaces 'previous', if any. Its monitor is held across the read, so each of
+    // its reservations was either posted before the read, and is in the journal, or
+    // is still pending after it and is carried over.
+    private WalletWindows load(Long walletId, WalletWindows previous, long now) {
+        if (previous == null) {
+            return readJournal(walletId, now);
+        }
+        synchronized (previous) {
+            // Checked before the read, so a posting replicated during it is counted twice
+            // until the next reload rather than not at all
+            dropReplicated(previous);
+            WalletWindows loaded = readJournal(walletId, now);
+            synchronized (loaded) {
+                for (Reservation reservation : previous.pending) {
+                    reservation.moveTo(loaded);
+                }
+            }
+            previous.pending.clear();
+            previous.retired = true;
+            return loaded;
+        }
+    }
+
+    // Reservations posted through the ledger engine that the journal now has
+    private void dropReplicated(WalletWindows windows) {
+        windows.pending.removeIf(reservation -> {
+            if (reservation.journaled == null || ledgerEngine.isPending(reservation.journaled)) {
+                return false;
+            }
+            reservation.windows = null;
+            return true;
+        });
+    }
+
+    // Outgoing transfers of the last day, as the journal has them
+    private WalletWindows readJournal(Long walletId, long now) {
+        WalletWindows windows = jdbcTemplate.query(RECENT_TRANSFERS_SQL, rs -> {
+            WalletWindows loaded = null;
+            while (rs.next()) {
+                if (loaded == null) {
+                    loaded = new WalletWindows(WalletTier.valueOf(rs.getString("tier")), now);
+                }
+                Timestamp postedAt = rs.getTimestamp("posted_at");
+                if (postedAt != null) {
+                    loaded.add(postedAt.getTime(), 1, toMinor(rs.getBigDecimal("amount").negate()));
+                }
+            }
+            return loaded;
+        }, new Timestamp(now - DAY_BUCKETS * DAY_BUCKET_MILLIS), walletId);
+        if (windows == null) {
+            throw new WalletNotFoundException("Wallet not found");
+        }
+        return windows;
+    }
+
+    private static long toMinor(BigDecimal amount) {
+        return amount.movePointRight(2).longValueExact();
+    }
+
+    private static String naira(long minor) {
+        return "NGN " + BigDecimal.valueOf(minor, 2).toPlainString();
+    }
+
+    /**
+     * Transfers counted by {@link #reserve} but not yet posted. Releasing takes
+     * them off the windows they are counted in; once posted, the journal has them.
+     */
+    public static final class Reservation {
+
+        private final long at;
+        private final int transfers;
+        private final long amount;
+        // The windows counting it while pending, null once settled
+        private volatile WalletWindows windows;
+        // Reference of a posting the ledger engine has yet to replicate
+        private volatile String journaled;
+
+        private Reservation(WalletWindows windows, long at, int transfers, long amount) {
+            this.windows = windows;
+            this.at = at;
+            this.transfers = transfers;
+            this.amount = amount;
+        }
+
+        public void release() {
+            settle(true);
+        }
+
+        /**
+         * Inside a transaction this takes effect when it completes: on commit the
+         * transfers stay counted, on rollback they are released.
+         */
+        public void posted() {
+            if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+                settle(false);
+                return;
+            }
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    settle(status != STATUS_COMMITTED);
+                }
+            });
+        }
+
+        /**
+         * Posted through the ledger engine, which replicates it to the journal
+         * later: it stays pending, and is carried over by reloads, until the
+         * engine no longer holds {@code reference} as unreplicated.
+         */
+        public void journaled(String reference) {
+            journaled = reference;
+        }
+
+        // Called with both windows' monitors held
+        private void moveTo(WalletWindows loaded) {
+            loaded.add(at, transfers, amount);
+            loaded.pending.add(this);
+            windows = loaded;
+        }
+
+        // A reload may move it to new windows while we wait for the old ones
+        private void settle(boolean uncount) {
+            while (true) {
+                WalletWindows current = windows;
+                if (current == null) {
+                    return;
+                }
+                synchronized (current) {
+                    if (current != windows) {
+                        continue;
+                    }
+                    if (current.pending.remove(this) && uncount) {
+                        current.add(at, -transfers, -amount);
+                    }
+                    windows = null;
+                    return;
+                }
+            }
+        }
+    }
+
+    private record Policy(long hourlyCount, long hourlyAmount, long dailyCount, long dailyAmount) {
+    }
+
+    // Guarded by its own monitor
+    private static final class WalletWindows {
+
+        private final WalletTier tier;
+        private final long loadedAt;
+        private final Window hour;
+        private final Window day;
+        private final Set<Reservation> pending = new HashSet<>();
+        // Replaced by a reload or evicted; reserve looks the wallet up again
+        private boolean retired;
+
+        WalletWindows(WalletTier tier, long now) {
+            this.tier = tier;
+            this.loadedAt = now;
+            hour = new Window(HOUR_BUCKETS, HOUR_BUCKET_MILLIS, now);
+            day = new Window(DAY_BUCKETS, DAY_BUCKET_MILLIS, now);
+        }
+
+        // Returns why the transfers don't fit, or null once they are counted
+        String tryAdd(long now, int transfers, long amount, Policy policy) {
+            hour.advance(now);
+            day.advance(now);
+            if (policy.hourlyCount() > 0 && hour.count + transfers > policy.hourlyCount()) {
+                return "Hourly limit of " + policy.hourlyCount() + " transfers reached";
+            }
+            if (policy.hourlyAmount() > 0 && hour.amount + amount > policy.hourlyAmount()) {
+                return "Transfer would exceed the hourly limit of " + naira(policy.hourlyAmount());
+            }
+            if (policy.dailyCount() > 0 && day.count + transfers > policy.dailyCount()) {
+                return "Daily limit of " + policy.dailyCount() + " transfers reached";
+            }
+            if (policy.dailyAmount() > 0 && day.amount + amount > policy.dailyAmount()) {
+                return "Transfer would exceed the daily limit of " + naira(policy.dailyAmount());
+            }
+            add(now, transfers, amount);
+            return null;
+        }
+
+        void add(long at, long transfers, long amount) {
+            hour.add(at, transfers, amount);
+            day.add(at, transfers, amount);
+        }
+    }
+
+    /**
+     * A ring of time buckets with running totals. Bucket i covers
+     * [i * bucketMillis, (i + 1) * bucketMillis) and sits in slot i mod length;
+     * the totals cover the newest bucket and the ones before it that still fit.
+     */
+    private static final class Window {
+
+        private final long bucketMillis;
+        private final long[] counts;
+        private final long[] amounts;
+        private long newest;
+        private long count;
+        private long amount;
+
+        Window(int buckets, long bucketMillis, long now) {
+            this.bucketMillis = bucketMillis;
+            counts = new long[buckets];
+            amounts = new long[buckets];
+            newest = now / bucketMillis;
+        }
+
+        // Drops the buckets that fall out of the window by 'now'
+        void advance(long now) {
+            long bucket = now / bucketMillis;
+            if (bucket <= newest) {
+                return;
+            }
+            for (long b = Math.max(newest + 1, bucket - counts.length + 1); b <= bucket; b++) {
+                int slot = (int) Math.floorMod(b, (long) counts.length);
+                count -= counts[slot];
+                amount -= amounts[slot];
+                counts[slot] = 0;
+                amounts[slot] = 0;
+            }
+            newest = bucket;
+        }
+
+        // Anything older than the window is ignored
+        void add(long at, long transfers, long minor) {
+            advance(at);
+            long bucket = at / bucketMillis;
+            if (bucket <= newest - counts.length) {
+                return;
+            }
+            int slot = (int) Math.floorMod(bucket, (long) counts.length);
+            counts[slot] += transfers;
+            amounts[slot] += minor;
+            count += transfers;
+            amount += minor;
+        }
+    }
+}
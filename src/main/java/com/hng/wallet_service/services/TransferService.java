@@ -1,17 +1,29 @@
 package com.hng.wallet_service.services;
 
-import com.hng.wallet_service.exceptions.InsufficientBalanceException;
 import com.hng.wallet_service.exceptions.InvalidAmountException;
 import com.hng.wallet_service.exceptions.WalletNotFoundException;
-import com.hng.wallet_service.models.Wallet;
-import com.hng.wallet_service.models.enums.TransactionStatus;
+import com.hng.wallet_service.ledger.LedgerEngine;
+import com.hng.wallet_service.ledger.LedgerEntry;
+import com.hng.wallet_service.models.JournalEntry;
 import com.hng.wallet_service.models.enums.TransactionType;
+import com.hng.wallet_service.repositories.JournalRepository;
 import com.hng.wallet_service.repositories.WalletRepository;
+import com.hng.wallet_service.utils.ReferenceGenerator;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 
 @Service
 @RequiredArgsConstructor
@@ -19,60 +31,222 @@ public class TransferService {
 
         private final WalletRepository walletRepository;
         private final TransactionService transactionService;
+        private final WalletBalanceService walletBalanceService;
+        private final TransferGroupCommitter groupCommitter;
+        private final LedgerEngine ledgerEngine;
+        private final ReferenceGenerator referenceGenerator;
+        private final TransferLimits transferLimits;
+        private final JournalRepository journalRepository;
+        private final PlatformTransactionManager transactionManager;
+
+        @Value("${wallet.transfer.batch.max-items:5000}")
+        private int maxBatchItems;
+
+        private TransactionTemplate transactionTemplate;
+        private TransactionTemplate readOnlyTransaction;
+
+        @PostConstruct
+        void init() {
+                transactionTemplate = new TransactionTemplate(transactionManager);
+                readOnlyTransaction = new TransactionTemplate(transactionManager);
+                readOnlyTransaction.setReadOnly(true);
+        }
 
-        @Transactional
         public void transfer(Long senderUserId, String recipientWalletNumber, BigDecimal amount) {
+                transfer(senderUserId, recipientWalletNumber, amount, referenceGenerator.next("TRANSFER"));
+        }
+
+        // Not transactional itself: the posting runs in its own short transaction, or
+        // in a shared one when group commit is enabled
+        public void transfer(Long senderUserId, String recipientWalletNumber, BigDecimal amount, String reference) {
                 // Validate amount
                 if (amount.compareTo(BigDecimal.ZERO) <= 0) {
                         throw new InvalidAmountException("Amount must be greater than zero");
                 }
 
-                // Get sender wallet with lock
-                Wallet senderWallet = walletRepository.findByUserId(senderUserId)
+                // Resolve wallet ids without taking any locks
+                Long senderWalletId = walletRepository.findIdByUserId(senderUserId)
                                 .orElseThrow(() -> new WalletNotFoundException("Sender wallet not found"));
 
-                // Lock sender wallet to prevent race conditions
-                Wallet lockedSenderWallet = walletRepository.findByIdWithLock(senderWallet.getId())
-                                .orElseThrow(() -> new WalletNotFoundException("Failed to lock sender wallet"));
+                Long recipientWalletId = walletRepository.findIdByWalletNumber(recipientWalletNumber)
+                                .orElseThrow(() -> new WalletNotFoundException(
+                                                "Recipient wallet not found: " + recipientWalletNumber));
+                if (senderWalletId.equals(recipientWalletId)) {
+                        throw new InvalidAmountException("Cannot transfer to your own wallet");
+                }
 
-                // Check balance
-                if (lockedSenderWallet.getBalance().compareTo(amount) < 0) {
-                        throw new InsufficientBalanceException("Insufficient balance. Available: "
-                                        + lockedSenderWallet.getBalance() + ", Required: " + amount);
+                // Counted against the sender's limits before posting, and uncounted if it fails
+                TransferLimits.Reservation reservation = transferLimits.reserve(senderWalletId, 1, amount);
+                try {
+                        if (ledgerEngine.isEnabled()) {
+                                ledgerEngine.post(LedgerEntry.transfer(senderWalletId, recipientWalletId, amount, reference));
+                        } else if (groupCommitter.isEnabled()) {
+                                groupCommitter.submit(senderWalletId, recipientWalletId, amount, reference);
+                        } else {
+                                walletBalanceService.postTransfer(senderWalletId, recipientWalletId, amount, reference);
+                        }
+                } catch (RuntimeException e) {
+                        reservation.release();
+                        throw e;
+                }
+                if (ledgerEngine.isEnabled()) {
+                        reservation.journaled(reference + "_OUT");
+                } else {
+                        reservation.posted();
                 }
+        }
 
-                // Get recipient wallet with lock
-                Wallet recipientWallet = walletRepository.findByWalletNumberWithLock(recipientWalletNumber)
-                                .orElseThrow(() -> new WalletNotFoundException(
-                                                "Recipient wallet not found: " + recipientWalletNumber));
+        // Whether a transfer made by transfer() under this reference went through
+        public boolean isPosted(String reference) {
+                String debit = reference + "_OUT";
+                if (ledgerEngine.isEnabled() && ledgerEngine.isPending(debit)) {
+                        return true;
+                }
+                return !journalRepository.findExistingReferences(new String[] { debit }).isEmpty();
+        }
+
+        /**
+         * Pays many recipients from one wallet in a single DB transaction, or as one
+         * ledger engine posting. Invalid items are reported and skipped; the sender is
+         * debited once for the total of the rest.
+         */
+        public List<BatchTransferResult> transferBatch(Long senderUserId, List<BatchTransferItem> items) {
+                if (items == null || items.isEmpty()) {
+                        throw new InvalidAmountException("Batch must contain at least one transfer");
+                }
+                if (items.size() > maxBatchItems) {
+                        throw new InvalidAmountException("Batch cannot contain more than " + maxBatchItems + " transfers");
+                }
+
+                if (!ledgerEngine.isEnabled()) {
+                        return transactionTemplate.execute(status -> payBatch(prepareBatch(senderUserId, items)));
+                }
+                // The engine blocks until its journal flush: resolve the wallets in a short
+                // transaction and post without holding a connection, as transfer() does
+                return payBatch(readOnlyTransaction.execute(status -> prepareBatch(senderUserId, items)));
+        }
+
+        private PreparedBatch prepareBatch(Long senderUserId, List<BatchTransferItem> items) {
+                Long senderWalletId = walletRepository.findIdByUserId(senderUserId)
+                                .orElseThrow(() -> new WalletNotFoundException("Sender wallet not found"));
+
+                // Resolve every recipient in one query
+                Set<String> walletNumbers = new HashSet<>();
+                for (BatchTransferItem item : items) {
+                        walletNumbers.add(item.walletNumber());
+                }
+                Map<String, Long> walletIds = new HashMap<>();
+                for (WalletRepository.WalletIdView wallet : walletRepository.findByWalletNumberIn(walletNumbers)) {
+                        walletIds.put(wallet.getWalletNumber(), wallet.getId());
+                }
+
+                String reference = referenceGenerator.next("PAYOUT");
+
+                List<BatchTransferResult> results = new ArrayList<>(items.size());
+                List<LedgerEntry> legs = new ArrayList<>();
+                TreeMap<Long, BigDecimal> credits = new TreeMap<>();
+                BigDecimal total = BigDecimal.ZERO;
+
+                for (int i = 0; i < items.size(); i++) {
+                        BatchTransferItem item = items.get(i);
+                        Long recipientWalletId = walletIds.get(item.walletNumber());
+
+                        String failure = null;
+                        if (item.amount() == null || item.amount().compareTo(BigDecimal.ZERO) <= 0) {
+                                failure = "Amount must be greater than zero";
+                        } else if (recipientWalletId == null) {
+                                failure = "Recipient wallet not found: " + item.walletNumber();
+                        } else if (recipientWalletId.equals(senderWalletId)) {
+                                failure = "Cannot transfer to your own wallet";
+                        }
+                        if (failure != null) {
+                                results.add(new BatchTransferResult(i, item.walletNumber(), item.amount(), "failed", null, failure));
+                                continue;
+                        }
+
+                        String itemReference = reference + "_" + i;
+                        legs.addAll(LedgerEntry.transfer(senderWalletId, recipientWalletId, item.amount(), itemReference));
+                        credits.merge(recipientWalletId, item.amount(), BigDecimal::add);
+                        total = total.add(item.amount());
+                        results.add(new BatchTransferResult(i, item.walletNumber(), item.amount(), "success", itemReference, null));
+                }
+
+                return new PreparedBatch(senderWalletId, results, legs, credits, total);
+        }
+
+        private List<BatchTransferResult> payBatch(PreparedBatch batch) {
+                List<LedgerEntry> legs = batch.legs();
+                if (legs.isEmpty()) {
+                        return batch.results();
+                }
+
+                // The payout counts as one transfer per paid item; over a limit, none of it is paid
+                TransferLimits.Reservation reservation = transferLimits.reserve(batch.senderWalletId(), legs.size() / 2,
+                                batch.total());
+                try {
+                        postBatch(batch.senderWalletId(), legs, batch.credits(), batch.total());
+                } catch (RuntimeException e) {
+                        reservation.release();
+                        throw e;
+                }
+                if (ledgerEngine.isEnabled()) {
+                        reservation.journaled(legs.get(0).reference());
+                } else {
+                        reservation.posted();
+                }
+                return batch.results();
+        }
+
+        private void postBatch(Long senderWalletId, List<LedgerEntry> legs, TreeMap<Long, BigDecimal> credits,
+                        BigDecimal total) {
+                if (ledgerEngine.isEnabled()) {
+                        // One posting, so the sender's total is checked and debited atomically
+                        ledgerEngine.post(legs);
+                        return;
+                }
+
+                // Lock every touched wallet in ascending id order: recipients below the
+                // sender, then the sender's single guarded debit, then the rest
+                Map<Long, BigDecimal> balances = new HashMap<>(
+                                walletBalanceService.creditAll(credits.headMap(senderWalletId)));
+                balances.put(senderWalletId, walletBalanceService.debit(senderWalletId, total));
+                balances.putAll(walletBalanceService.creditAll(credits.tailMap(senderWalletId)));
+
+                // Each wallet's legs end at the balance it was left with: walk them
+                // backwards to get the balance after each one
+                JournalEntry.Posting[] postings = new JournalEntry.Posting[legs.size()];
+                for (int i = legs.size() - 1; i >= 0; i--) {
+                        LedgerEntry leg = legs.get(i);
+                        BigDecimal balanceAfter = balances.get(leg.walletId());
+                        boolean debit = leg.type() == TransactionType.TRANSFER_OUT;
+                        postings[i] = debit
+                                        ? JournalEntry.Posting.transferOut(leg.reference(), leg.walletId(),
+                                                        leg.counterpartWalletId(), leg.amount(), balanceAfter)
+                                        : JournalEntry.Posting.transferIn(leg.reference(), leg.walletId(),
+                                                        leg.counterpartWalletId(), leg.amount(), balanceAfter);
+                        if (balanceAfter != null) {
+                                balances.put(leg.walletId(), debit
+                                                ? balanceAfter.add(leg.amount())
+                                                : balanceAfter.subtract(leg.amount()));
+                        }
+                }
+                // The whole payout is one journal entry
+                transactionService.postJournalEntries(List.of(new JournalEntry(List.of(postings))));
+        }
+
+        private record PreparedBatch(Long senderWalletId, List<BatchTransferResult> results, List<LedgerEntry> legs,
+                        TreeMap<Long, BigDecimal> credits, BigDecimal total) {
+        }
+
+        public record BatchTransferItem(String walletNumber, BigDecimal amount) {
+        }
 
-                // Generate unique reference
-                String reference = "TRANSFER_" + System.currentTimeMillis() + "_" + senderUserId;
-
-                // Debit sender
-                lockedSenderWallet.setBalance(lockedSenderWallet.getBalance().subtract(amount));
-                walletRepository.save(lockedSenderWallet);
-
-                // Create TRANSFER_OUT transaction for sender
-                transactionService.createTransaction(
-                                reference + "_OUT",
-                                lockedSenderWallet,
-                                TransactionType.TRANSFER_OUT,
-                                amount,
-                                TransactionStatus.SUCCESS,
-                                recipientWallet.getId());
-
-                // Credit recipient
-                recipientWallet.setBalance(recipientWallet.getBalance().add(amount));
-                walletRepository.save(recipientWallet);
-
-                // Create TRANSFER_IN transaction for recipient
-                transactionService.createTransaction(
-                                reference + "_IN",
-                                recipientWallet,
-                                TransactionType.TRANSFER_IN,
-                                amount,
-                                TransactionStatus.SUCCESS,
-                                lockedSenderWallet.getId());
+        public record BatchTransferResult(
+                        int index,
+                        String walletNumber,
+                        BigDecimal amount,
+                        String status,
+                        String reference,
+                        String message) {
         }
 }
@@ -0,0 +1,143 @@
+package com.hng.wallet_service.services;
+
+import com.hng.wallet_service.exceptions.InsufficientBalanceException;
+import com.hng.wallet_service.exceptions.WalletNotFoundException;
+import com.hng.wallet_service.models.JournalEntry;
+import com.hng.wallet_service.repositories.WalletRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Single-statement balance changes shared by every money-moving path. Callers
+ * touching several wallets in one transaction must do so in ascending wallet id
+ * order so row locks are always taken in the same order.
+ */
+@Service
+@RequiredArgsConstructor
+public class WalletBalanceService {
+
+    // Returned for every wallet row a leg updates
+    private static final String[] POSTED_COLUMNS = {"id", "balance", "stripe_count"};
+
+    private final WalletRepository walletRepository;
+    private final TransactionService transactionService;
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    /**
+     * Posts a transfer between two wallets: the debit and the credit go out as one
+     * JDBC batch in wallet id order, then the journal entry is appended with the
+     * balances they left behind.
+     */
+    @Transactional
+    public void postTransfer(Long senderWalletId, Long recipientWalletId, BigDecimal amount, String reference) {
+        SqlParameterSource debit = leg(senderWalletId, amount, false);
+        SqlParameterSource credit = leg(recipientWalletId, amount, true);
+        boolean senderFirst = senderWalletId <= recipientWalletId;
+        PostedLegs posted = senderFirst ? postLegs(debit, credit) : postLegs(credit, debit);
+
+        // Judged by the debit's own update count: the credit's row can't vouch for it.
+        // The credit is rolled back with the transaction if the debit can't be made.
+        BigDecimal senderBalance = posted.balances().get(senderWalletId);
+        if (posted.updated()[senderFirst ? 0 : 1] == 0) {
+            senderBalance = sweepAndDebit(senderWalletId, amount);
+        }
+
+        transactionService.postJournalEntries(List.of(JournalEntry.transfer(reference, senderWalletId,
+                recipientWalletId, amount, senderBalance, posted.balances().get(recipientWalletId))));
+    }
+
+    /**
+     * Guarded debit. Returns the wallet's balance afterwards, or null for a hot
+     * wallet, whose balance is spread over its stripes.
+     */
+    public BigDecimal debit(Long walletId, BigDecimal amount) {
+        PostedLegs posted = postLegs(leg(walletId, amount, false));
+        if (posted.updated()[0] > 0) {
+            return posted.balances().get(walletId);
+        }
+        return sweepAndDebit(walletId, amount);
+    }
+
+    /**
+     * Credits a wallet, on a stripe for hot wallets. Returns the balance
+     * afterwards, or null for a hot wallet.
+     */
+    public BigDecimal credit(Long walletId, BigDecimal amount) {
+        return postLegs(leg(walletId, amount, true)).balances().get(walletId);
+    }
+
+    /**
+     * Credits are sent as one JDBC batch, in the map's iteration order. Returns the
+     * balance each wallet was left with; hot wallets are absent or map to null.
+     */
+    public Map<Long, BigDecimal> creditAll(Map<Long, BigDecimal> credits) {
+        if (credits.isEmpty()) {
+            return Map.of();
+        }
+        List<SqlParameterSource> legs = new ArrayList<>(credits.size());
+        credits.forEach((walletId, amount) -> legs.add(leg(walletId, amount, true)));
+        return postLegs(legs.toArray(new SqlParameterSource[0])).balances();
+    }
+
+    // A hot wallet keeps most of its money on its stripes: gather them onto the
+    // wallet row and retry the refused debit before giving up
+    private BigDecimal sweepAndDebit(Long walletId, BigDecimal amount) {
+        if (walletRepository.sweepStripes(walletId) > 0) {
+            PostedLegs posted = postLegs(leg(walletId, amount, false));
+            if (posted.updated()[0] > 0) {
+                return posted.balances().get(walletId);
+            }
+        }
+        throw insufficientBalance(walletId, amount);
+    }
+
+    private InsufficientBalanceException insufficientBalance(Long walletId, BigDecimal amount) {
+        BigDecimal available = walletRepository.findBalanceById(walletId)
+                .orElseThrow(() -> new WalletNotFoundException("Sender wallet not found"));
+        return new InsufficientBalanceException("Insufficient balance. Available: "
+                + available + ", Required: " + amount);
+    }
+
+    private static SqlParameterSource leg(Long walletId, BigDecimal amount, boolean credit) {
+        return new MapSqlParameterSource()
+                .addValue("id", walletId)
+                .addValue("amount", amount)
+                .addValue("credit", credit)
+                .addValue("slot", credit ? nextStripeSlot() : 0);
+    }
+
+    // Runs the legs as one JDBC batch: how many wallet rows each leg updated, and the
+    // balances of those rows. A debit that was refused and a credit that landed on a
+    // stripe update none.
+    private PostedLegs postLegs(SqlParameterSource... legs) {
+        KeyHolder rows = new GeneratedKeyHolder();
+        int[] updated = jdbcTemplate.batchUpdate(WalletRepository.POST_LEG_SQL, legs, rows, POSTED_COLUMNS);
+
+        Map<Long, BigDecimal> balances = new HashMap<>();
+        for (Map<String, Object> row : rows.getKeyList()) {
+            boolean hot = ((Number) row.get("stripe_count")).intValue() > 0;
+            balances.put(((Number) row.get("id")).longValue(), hot ? null : (BigDecimal) row.get("balance"));
+        }
+        return new PostedLegs(updated, balances);
+    }
+
+    private static int nextStripeSlot() {
+        return ThreadLocalRandom.current().nextInt(Integer.MAX_VALUE);
+    }
+
+    private record PostedLegs(int[] updated, Map<Long, BigDecimal> balances) {
+    }
+}
@@ -0,0 +1,119 @@
+package com.hng.wallet_service.services;
+
+import com.hng.wallet_service.repositories.WalletRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Hands out 10-digit wallet numbers: nine digits that are a fixed permutation of
+ * a sequence number, followed by a Luhn check digit. Sequence numbers are
+ * reserved from Postgres a block at a time, so most allocations cost no query,
+ * and because the permutation is one-to-one no two instances can hand out the
+ * same number.
+ */
+@Service
+@RequiredArgsConstructor
+public class WalletNumberAllocator {
+
+    private static final int BLOCK_SIZE = 1000;
+
+    // Nine digits before the check digit
+    private static final long DOMAIN = 1_000_000_000L;
+
+    // Feistel network over 30 bits; results past DOMAIN are encrypted again
+    private static final int HALF_BITS = 15;
+    private static final int HALF_MASK = (1 << HALF_BITS) - 1;
+    private static final long[] ROUND_KEYS = {
+            0x5DEECE66DL, 0x2545F4914F6CDD1DL, 0x9E3779B97F4A7C15L, 0xBF58476D1CE4E5B9L
+    };
+
+    private final JdbcTemplate jdbcTemplate;
+    private final WalletRepository walletRepository;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ArrayDeque<String> reserved = new ArrayDeque<>(BLOCK_SIZE);
+
+    public String next() {
+        lock.lock();
+        try {
+            while (reserved.isEmpty()) {
+                reserveBlock();
+            }
+            return reserved.poll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void reserveBlock() {
+        Long block = jdbcTemplate.queryForObject("SELECT nextval('wallet_number_block_seq')", Long.class);
+        long first = block * BLOCK_SIZE;
+        if (first + BLOCK_SIZE > DOMAIN) {
+            throw new IllegalStateException("Wallet numbers exhausted");
+        }
+
+        List<String> numbers = new ArrayList<>(BLOCK_SIZE);
+        for (long sequence = first; sequence < first + BLOCK_SIZE; sequence++) {
+            String digits = String.format("%09d", permute(sequence));
+            numbers.add(digits + luhnCheckDigit(digits));
+        }
+
+        // Wallets created before this allocator got random numbers that may clash
+        Set<String> taken = new HashSet<>(walletRepository.findExistingWalletNumbers(numbers.toArray(new String[0])));
+        for (String number : numbers) {
+            if (!taken.contains(number)) {
+                reserved.add(number);
+            }
+        }
+    }
+
+    private static long permute(long sequence) {
+        long value = sequence;
+        do {
+            value = feistel(value);
+        } while (value >= DOMAIN);
+        return value;
+    }
+
+    private static long feistel(long value) {
+        int left = (int) (value >>> HALF_BITS) & HALF_MASK;
+        int right = (int) value & HALF_MASK;
+        for (long key : ROUND_KEYS) {
+            int mixed = left ^ round(right, key);
+            left = right;
+            right = mixed;
+        }
+        return ((long) left << HALF_BITS) | right;
+    }
+
+    private static int round(int half, long key) {
+        long x = (half ^ key) * 0x9E3779B97F4A7C15L;
+        x ^= x >>> 31;
+        return (int) (x >>> 33) & HALF_MASK;
+    }
+
+    private static int luhnCheckDigit(String digits) {
+        int sum = 0;
+        boolean doubled = true;
+        for (int i = digits.length() - 1; i >= 0; i--) {
+            int digit = digits.charAt(i) - '0';
+            if (doubled) {
+                digit *= 2;
+                if (digit > 9) {
+                    digit -= 9;
+                }
+            }
+            sum += digit;
+            doubled = !doubled;
+        }
+        return (10 - sum % 10) % 10;
+    }
+}
@@ -1,46 +1,65 @@
 package com.hng.wallet_service.services;
 
 import com.hng.wallet_service.exceptions.WalletNotFoundException;
+import com.hng.wallet_service.ledger.LedgerEngine;
 import com.hng.wallet_service.models.User;
 import com.hng.wallet_service.models.Wallet;
+import com.hng.wallet_service.models.WalletStripe;
 import com.hng.wallet_service.repositories.WalletRepository;
+import com.hng.wallet_service.repositories.WalletStripeRepository;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
-import java.util.Random;
 
 @Service
 @RequiredArgsConstructor
 public class WalletService {
 
     private final WalletRepository walletRepository;
+    private final WalletStripeRepository walletStripeRepository;
+    private final LedgerEngine ledgerEngine;
+    private final WalletNumberAllocator walletNumberAllocator;
 
     @Transactional
     public Wallet createWallet(User user) {
         Wallet wallet = new Wallet();
         wallet.setUser(user);
-        wallet.setWalletNumber(generateWalletNumber());
+        wallet.setWalletNumber(walletNumberAllocator.next());
         wallet.setBalance(BigDecimal.ZERO);
         wallet.setCurrency("NGN");
         return walletRepository.save(wallet);
     }
 
-    private String generateWalletNumber() {
-        // Generate 10-digit wallet number
-        Random random = new Random();
-        StringBuilder walletNumber = new StringBuilder();
-        for (int i = 0; i < 10; i++) {
-            walletNumber.append(random.nextInt(10));
-        }
+    /**
+     * Opts a wallet into hot-wallet mode: credits are spread over the given number
+     * of stripe rows instead of all locking the wallet row. Can only grow.
+     */
+    @Transactional
+    public Wallet enableHotWallet(String walletNumber, int stripes) {
+        Wallet wallet = walletRepository.findByWalletNumberWithLock(walletNumber)
+                .orElseThrow(() -> new WalletNotFoundException("Wallet not found: " + walletNumber));
 
-        // Check if it exists, regenerate if needed
-        if (walletRepository.findByWalletNumber(walletNumber.toString()).isPresent()) {
-            return generateWalletNumber();
+        for (int index = wallet.getStripeCount(); index < stripes; index++) {
+            WalletStripe stripe = new WalletStripe();
+            stripe.setWallet(wallet);
+            stripe.setStripeIndex(index);
+            stripe.setBalance(BigDecimal.ZERO);
+            walletStripeRepository.save(stripe);
+        }
+        if (stripes > wallet.getStripeCount()) {
+            wallet.setStripeCount(stripes);
         }
+        return walletRepository.save(wallet);
+    }
 
-        return walletNumber.toString();
+    public BigDecimal getBalance(Long walletId) {
+        if (ledgerEngine.isEnabled()) {
+            return ledgerEngine.getBalance(walletId);
+        }
+        return walletRepository.findBalanceById(walletId)
+                .orElseThrow(() -> new WalletNotFoundException("Wallet not found: " + walletId));
     }
 
     public Wallet getWalletByUserId(Long userId) {
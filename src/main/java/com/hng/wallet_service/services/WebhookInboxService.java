@@ -0,0 +1,211 @@
+package com.hng.wallet_service.services;
+
+import com.hng.wallet_service.exceptions.UnauthorizedException;
+import com.hng.wallet_service.models.WebhookInboxEvent;
+import com.hng.wallet_service.repositories.TransactionRepository;
+import com.hng.wallet_service.repositories.WebhookInboxRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Paystack webhook inbox. Deliveries are verified and stored by {@link #accept}
+ * so the endpoint can answer at once; {@link #drain} then applies them in
+ * batches, parallelism events at a time across wallets. A batch holds at most
+ * one event per wallet, its oldest, so a wallet's events are applied in order
+ * across batches and instances.
+ */
+@Service
+@RequiredArgsConstructor
+public class WebhookInboxService {
+
+    // Leases a batch so another instance polling the same table skips it. Only a
+    // wallet's oldest unprocessed event can be claimed: while an earlier one is
+    // leased, backed off, or being claimed elsewhere, the later ones wait for it.
+    private static final String CLAIM_SQL = "UPDATE webhook_inbox SET available_at = :leaseUntil "
+            + "WHERE id IN (SELECT id FROM webhook_inbox w WHERE processed_at IS NULL AND available_at <= now() "
+            + "AND NOT EXISTS (SELECT 1 FROM webhook_inbox o WHERE o.wallet_id = w.wallet_id "
+            + "AND o.processed_at IS NULL AND o.id < w.id) "
+            + "ORDER BY id LIMIT :limit FOR UPDATE SKIP LOCKED) "
+            + "RETURNING id, attempts, payload";
+
+    private static final String DEFER_SQL = "UPDATE webhook_inbox SET available_at = :retryAt, "
+            + "attempts = attempts + 1, last_error = :error, "
+            + "processed_at = CASE WHEN :giveUp THEN now() ELSE NULL END "
+            + "WHERE id = :id";
+
+    private final WebhookInboxRepository webhookInboxRepository;
+    private final TransactionRepository transactionRepository;
+    private final PaystackService paystackService;
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${wallet.webhook-inbox.batch-size:200}")
+    private int batchSize;
+
+    @Value("${wallet.webhook-inbox.lease-seconds:300}")
+    private long leaseSeconds;
+
+    @Value("${wallet.webhook-inbox.max-attempts:10}")
+    private int maxAttempts;
+
+    // Each event holds a pooled connection while it is applied; keep well below the pool size
+    @Value("${wallet.webhook-inbox.parallelism:4}")
+    private int parallelism;
+
+    private final AtomicLong depth = new AtomicLong();
+    private final AtomicLong lagSeconds = new AtomicLong();
+    private final ExecutorService workers = Executors.newVirtualThreadPerTaskExecutor();
+    private TransactionTemplate transactionTemplate;
+    private Counter processed;
+    private Counter failed;
+
+    @PostConstruct
+    void init() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        Gauge.builder("wallet.webhook.inbox.depth", depth, AtomicLong::get)
+                .description("Webhook events waiting to be processed")
+                .register(meterRegistry);
+        Gauge.builder("wallet.webhook.inbox.lag", lagSeconds, AtomicLong::get)
+                .description("Age of the oldest unprocessed webhook event")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+        processed = meterRegistry.counter("wallet.webhook.inbox.processed");
+        failed = meterRegistry.counter("wallet.webhook.inbox.failed");
+    }
+
+    @PreDestroy
+    void shutdown() {
+        workers.close();
+    }
+
+    /**
+     * Verifies and stores a delivery. A redelivery of an event already in the inbox
+     * is accepted without being stored again.
+     */
+    public void accept(String signature, byte[] payload) {
+        // Forged or junk deliveries are turned away before any parsing
+        if (!paystackService.validateSignature(signature, payload)) {
+            throw new UnauthorizedException("Invalid webhook signature");
+        }
+
+        PaystackService.WebhookEvent event = paystackService.parseWebhookEvent(payload);
+        String eventType = event.event();
+        String reference = event.reference();
+        String subject = event.id() != null ? event.id() : reference;
+
+        WebhookInboxEvent inboxEvent = new WebhookInboxEvent();
+        inboxEvent.setEventKey(eventType + ":" + subject);
+        inboxEvent.setEventType(eventType);
+        inboxEvent.setReference(reference);
+        inboxEvent.setWalletId(reference == null ? null
+                : transactionRepository.findWalletIdByReference(reference).orElse(null));
+        inboxEvent.setPayload(new String(payload, StandardCharsets.UTF_8));
+        inboxEvent.setAvailableAt(Instant.now());
+        try {
+            webhookInboxRepository.saveAndFlush(inboxEvent);
+        } catch (DataIntegrityViolationException e) {
+            // Paystack redelivered an event we already hold
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${wallet.webhook-inbox.poll-interval-ms:200}")
+    public void drain() {
+        List<ClaimedEvent> batch = jdbcTemplate.query(CLAIM_SQL, new MapSqlParameterSource()
+                        .addValue("leaseUntil", Timestamp.from(Instant.now().plusSeconds(leaseSeconds)))
+                        .addValue("limit", batchSize),
+                (rs, rowNum) -> new ClaimedEvent(
+                        rs.getLong("id"),
+                        rs.getInt("attempts"),
+                        rs.getString("payload")));
+
+        if (!batch.isEmpty()) {
+            // No two events in the batch share a wallet
+            Semaphore slots = new Semaphore(parallelism);
+            List<Future<?>> running = new ArrayList<>(batch.size());
+            try {
+                for (ClaimedEvent event : batch) {
+                    slots.acquire();
+                    running.add(workers.submit(() -> {
+                        try {
+                            process(event);
+                        } finally {
+                            slots.release();
+                        }
+                    }));
+                }
+                for (Future<?> worker : running) {
+                    try {
+                        worker.get();
+                    } catch (ExecutionException e) {
+                        System.err.println("Webhook inbox worker failed: " + e.getCause().getMessage());
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+
+        WebhookInboxRepository.InboxStats stats = webhookInboxRepository.findStats();
+        depth.set(stats.getDepth());
+        lagSeconds.set(stats.getLagSeconds() == null ? 0 : stats.getLagSeconds().longValue());
+    }
+
+    private void process(ClaimedEvent event) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                paystackService.processWebhookEvent(event.payload());
+                webhookInboxRepository.markProcessed(event.id(), Instant.now());
+            });
+            processed.increment();
+        } catch (RuntimeException e) {
+            failed.increment();
+            defer(event, e);
+        }
+    }
+
+    // Backs off the failed event; the wallet's later events can't be claimed until it is done
+    private void defer(ClaimedEvent failedEvent, RuntimeException error) {
+        int attempts = failedEvent.attempts() + 1;
+        boolean giveUp = attempts >= maxAttempts;
+        Duration backoff = Duration.ofSeconds(Math.min(300, 1L << Math.min(attempts, 8)));
+        String message = error.getMessage() == null ? error.getClass().getName() : error.getMessage();
+        System.err.println("Webhook event " + failedEvent.id() + " failed (attempt " + attempts + ")"
+                + (giveUp ? ", giving up: " : ": ") + message);
+
+        jdbcTemplate.update(DEFER_SQL, new MapSqlParameterSource()
+                .addValue("retryAt", Timestamp.from(giveUp ? Instant.now() : Instant.now().plus(backoff)))
+                .addValue("id", failedEvent.id())
+                .addValue("error", message.length() > 1000 ? message.substring(0, 1000) : message)
+                .addValue("giveUp", giveUp));
+    }
+
+    private record ClaimedEvent(Long id, int attempts, String payload) {
+    }
+}
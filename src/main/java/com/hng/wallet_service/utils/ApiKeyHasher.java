@@ -0,0 +1,81 @@
+package com.hng.wallet_service.utils;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Base64;
+
+/**
+ * Hashes API keys for storage in ApiKey.keyHash.
+ * - "hmac-sha256$..." - keyed HMAC-SHA-256 digest, issued for all new keys
+ * - "$2a$..." - legacy BCrypt hash, still verified until upgraded
+ */
+@Component
+public class ApiKeyHasher {
+
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+    private static final String HMAC_SCHEME = "hmac-sha256$";
+    private static final String BCRYPT_SCHEME = "$2";
+
+    @Value("${apikey.hash-secret}")
+    private String secret;
+
+    private final BCryptPasswordEncoder legacyEncoder = new BCryptPasswordEncoder();
+
+    private SecretKeySpec secretKey;
+
+    // Mac instances are not thread-safe, so keep one per thread instead of
+    // looking one up on every request
+    private final ThreadLocal<Mac> mac = ThreadLocal.withInitial(this::newMac);
+
+    @PostConstruct
+    void init() {
+        secretKey = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), HMAC_ALGORITHM);
+        newMac();
+    }
+
+    public String hash(String rawKey) {
+        return HMAC_SCHEME + Base64.getUrlEncoder().withoutPadding().encodeToString(digest(rawKey));
+    }
+
+    public boolean matches(String rawKey, String storedHash) {
+        if (storedHash.startsWith(HMAC_SCHEME)) {
+            byte[] expected;
+            try {
+                expected = Base64.getUrlDecoder().decode(storedHash.substring(HMAC_SCHEME.length()));
+            } catch (IllegalArgumentException e) {
+                return false;
+            }
+            return MessageDigest.isEqual(expected, digest(rawKey));
+        }
+        if (storedHash.startsWith(BCRYPT_SCHEME)) {
+            return legacyEncoder.matches(rawKey, storedHash);
+        }
+        return false;
+    }
+
+    public boolean needsUpgrade(String storedHash) {
+        return !storedHash.startsWith(HMAC_SCHEME);
+    }
+
+    private byte[] digest(String rawKey) {
+        return mac.get().doFinal(rawKey.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Mac newMac() {
+        try {
+            Mac instance = Mac.getInstance(HMAC_ALGORITHM);
+            instance.init(secretKey);
+            return instance;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Failed to initialise API key hasher", e);
+        }
+    }
+}
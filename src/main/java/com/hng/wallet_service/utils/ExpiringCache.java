@@ -0,0 +1,69 @@
+package com.hng.wallet_service.utils;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Small bounded in-memory cache where every entry carries its own expiry.
+ * - Expired entries are dropped when read and swept when the cache is full
+ * - A maxEntries of zero or less disables caching entirely
+ */
+public class ExpiringCache<K, V> {
+
+    private final ConcurrentHashMap<K, Entry<V>> entries = new ConcurrentHashMap<>();
+    private final int maxEntries;
+
+    public ExpiringCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    public V get(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expiresAtMillis() <= System.currentTimeMillis()) {
+            entries.remove(key, entry);
+            return null;
+        }
+        return entry.value();
+    }
+
+    public void put(K key, V value, long expiresAtMillis) {
+        if (maxEntries <= 0 || expiresAtMillis <= System.currentTimeMillis()) {
+            return;
+        }
+        if (entries.size() >= maxEntries && !entries.containsKey(key)) {
+            evict();
+        }
+        entries.put(key, new Entry<>(value, expiresAtMillis));
+    }
+
+    public void invalidate(K key) {
+        entries.remove(key);
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private void evict() {
+        long now = System.currentTimeMillis();
+        entries.values().removeIf(entry -> entry.expiresAtMillis() <= now);
+
+        // Still full of live entries: drop an arbitrary slice rather than growing
+        int toRemove = entries.size() - maxEntries + Math.max(1, maxEntries / 8);
+        Iterator<K> keys = entries.keySet().iterator();
+        while (toRemove-- > 0 && keys.hasNext()) {
+            keys.next();
+            keys.remove();
+        }
+    }
+
+    private record Entry<V>(V value, long expiresAtMillis) {
+    }
+}
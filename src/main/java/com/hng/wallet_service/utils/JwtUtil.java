@@ -1,14 +1,18 @@
 package com.hng.wallet_service.utils;
 
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.security.Keys;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.nio.charset.StandardCharsets;
 import java.security.Key;
+import java.time.Instant;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
@@ -22,9 +26,22 @@ public class JwtUtil {
     @Value("${jwt.expiration}")
     private Long expiration;
 
-    private Key getSigningKey() {
-        byte[] keyBytes = secret.getBytes(StandardCharsets.UTF_8);
-        return Keys.hmacShaKeyFor(keyBytes);
+    @Value("${jwt.cache.max-entries:10000}")
+    private int cacheMaxEntries;
+
+    // Built once at startup; both are immutable and thread-safe
+    private Key signingKey;
+    private JwtParser parser;
+
+    private ExpiringCache<String, JwtPrincipal> verifiedTokens;
+
+    @PostConstruct
+    void init() {
+        signingKey = Keys.hmacShaKeyFor(secret.getBytes(StandardCharsets.UTF_8));
+        parser = Jwts.parserBuilder()
+                .setSigningKey(signingKey)
+                .build();
+        verifiedTokens = new ExpiringCache<>(cacheMaxEntries);
     }
 
     public String generateToken(String email, Long userId) {
@@ -37,31 +54,38 @@ public class JwtUtil {
                 .setSubject(email)
                 .setIssuedAt(new Date())
                 .setExpiration(new Date(System.currentTimeMillis() + expiration))
-                .signWith(getSigningKey(), SignatureAlgorithm.HS256)
+                .signWith(signingKey, SignatureAlgorithm.HS256)
                 .compact();
     }
 
     public Claims extractClaims(String token) {
-        return Jwts.parserBuilder()
-                .setSigningKey(getSigningKey())
-                .build()
-                .parseClaimsJws(token)
-                .getBody();
+        return parser.parseClaimsJws(token).getBody();
     }
 
-    public String extractEmail(String token) {
-        return extractClaims(token).getSubject();
-    }
+    /**
+     * Verifies the token's signature and expiry and decodes it in a single parse.
+     * Recently verified tokens are served from memory until they expire.
+     * Throws JwtException if the token is invalid or expired.
+     */
+    public JwtPrincipal verify(String token) {
+        JwtPrincipal cached = verifiedTokens.get(token);
+        if (cached != null) {
+            return cached;
+        }
 
-    public Long extractUserId(String token) {
-        return extractClaims(token).get("userId", Long.class);
-    }
+        Claims claims = extractClaims(token);
+        if (claims.getExpiration() == null) {
+            throw new JwtException("Token has no expiry");
+        }
 
-    public boolean isTokenExpired(String token) {
-        return extractClaims(token).getExpiration().before(new Date());
+        JwtPrincipal principal = new JwtPrincipal(
+                claims.get("userId", Long.class),
+                claims.getSubject(),
+                claims.getExpiration().toInstant());
+        verifiedTokens.put(token, principal, principal.expiresAt().toEpochMilli());
+        return principal;
     }
 
-    public boolean validateToken(String token, String email) {
-        return (extractEmail(token).equals(email) && !isTokenExpired(token));
+    public record JwtPrincipal(Long userId, String email, Instant expiresAt) {
     }
 }
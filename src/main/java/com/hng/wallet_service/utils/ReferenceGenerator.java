@@ -0,0 +1,75 @@
+package com.hng.wallet_service.utils;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Time-ordered transaction references, e.g. "TRANSFER_0DW3K8Q5T2A1Z".
+ * - The 64-bit id is milliseconds since 2025-01-01 (41 bits), node id (10 bits)
+ *   and a per-millisecond counter (12 bits), as in Snowflake
+ * - Encoded as 13 Crockford base32 characters, so text order is time order and
+ *   new rows land at the right edge of the reference index
+ * - Lock-free: one CAS per id; if the counter runs out in a millisecond, or the
+ *   clock steps back, ids borrow from the next millisecond instead of repeating
+ * - Each instance needs its own node id; startup fails without one unless the
+ *   service is configured as a single instance
+ */
+@Component
+public class ReferenceGenerator {
+
+    private static final long EPOCH_MILLIS = 1735689600000L;
+    private static final int NODE_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+    private static final long MAX_NODE_ID = (1L << NODE_BITS) - 1;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+    private static final char[] ALPHABET = "0123456789ABCDEFGHJKMNPQRSTVWXYZ".toCharArray();
+    private static final int ENCODED_LENGTH = 13;
+
+    @Value("${wallet.reference.node-id:-1}")
+    private long configuredNodeId;
+
+    @Value("${wallet.reference.single-instance:false}")
+    private boolean singleInstance;
+
+    private long nodeId;
+
+    // Last (millis << SEQUENCE_BITS | sequence) handed out
+    private final AtomicLong state = new AtomicLong();
+
+    @PostConstruct
+    void init() {
+        if (configuredNodeId > MAX_NODE_ID) {
+            throw new IllegalStateException("wallet.reference.node-id must be between 0 and " + MAX_NODE_ID);
+        }
+        if (configuredNodeId >= 0) {
+            nodeId = configuredNodeId;
+        } else if (singleInstance) {
+            nodeId = 0;
+        } else {
+            // Ids from two instances sharing a node id can collide
+            throw new IllegalStateException("wallet.reference.node-id must be set to a value unique to this "
+                    + "instance, or wallet.reference.single-instance=true if there is only one");
+        }
+        System.out.println("Reference generator node id: " + nodeId);
+    }
+
+    public String next(String prefix) {
+        long id = nextId();
+        char[] encoded = new char[ENCODED_LENGTH];
+        for (int i = ENCODED_LENGTH - 1; i >= 0; i--) {
+            encoded[i] = ALPHABET[(int) (id & 31)];
+            id >>>= 5;
+        }
+        return prefix + "_" + new String(encoded);
+    }
+
+    public long nextId() {
+        long stamp = state.updateAndGet(last ->
+                Math.max((System.currentTimeMillis() - EPOCH_MILLIS) << SEQUENCE_BITS, last + 1));
+        long millis = stamp >>> SEQUENCE_BITS;
+        return (millis << (NODE_BITS + SEQUENCE_BITS)) | (nodeId << SEQUENCE_BITS) | (stamp & SEQUENCE_MASK);
+    }
+}
@@ -0,0 +1,48 @@
+package com.hng.wallet_service;
+
+import com.hng.wallet_service.models.User;
+import com.hng.wallet_service.models.Wallet;
+import com.hng.wallet_service.models.enums.WalletTier;
+import com.hng.wallet_service.repositories.UserRepository;
+import com.hng.wallet_service.repositories.WalletRepository;
+import com.hng.wallet_service.services.WalletService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Users with wallets for service tests, created through WalletService as sign-up
+ * does, so every wallet number comes from WalletNumberAllocator.
+ */
+@Component
+@RequiredArgsConstructor
+public class TestWallets {
+
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+
+    private final UserRepository userRepository;
+    private final WalletRepository walletRepository;
+    private final WalletService walletService;
+
+    public Wallet create() {
+        return create(WalletTier.STANDARD, BigDecimal.ZERO);
+    }
+
+    public Wallet create(WalletTier tier, BigDecimal balance) {
+        String name = "wallet-test-" + System.nanoTime() + "-" + SEQUENCE.incrementAndGet();
+        User user = new User();
+        user.setEmail(name + "@example.com");
+        user.setFullName("Wallet Test");
+        userRepository.save(user);
+
+        Wallet wallet = walletService.createWallet(user);
+        if (wallet.getTier() == tier && balance.signum() == 0) {
+            return wallet;
+        }
+        wallet.setTier(tier);
+        wallet.setBalance(balance);
+        return walletRepository.save(wallet);
+    }
+}
@@ -0,0 +1,89 @@
+package com.hng.wallet_service.security;
+
+import com.hng.wallet_service.models.enums.Permissions;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RateLimiterTest {
+
+    @Test
+    void bucketsHoldTheirBurstPerScopeAndAcrossThreads() throws Exception {
+        RateLimiter limiter = limiter();
+
+        // A slow refill, so no token comes back during the test
+        int allowed = 0;
+        for (int i = 0; i < 15; i++) {
+            RateLimiter.Decision decision = limiter.tryAcquireForKey("key-a", Permissions.TRANSFER);
+            if (decision.allowed()) {
+                allowed++;
+                assertThat(decision.remaining()).isEqualTo(10 - allowed);
+            } else {
+                assertThat(decision.remaining()).isZero();
+                assertThat(decision.retryAfterNanos()).isPositive();
+            }
+        }
+        assertThat(allowed).isEqualTo(10);
+
+        // Other scopes and other keys have their own buckets
+        assertThat(limiter.tryAcquireForKey("key-a", Permissions.READ).allowed()).isTrue();
+        assertThat(limiter.tryAcquireForKey("key-b", Permissions.TRANSFER).allowed()).isTrue();
+
+        // Users get the multiplier, and concurrent callers never take more than the burst
+        List<Future<Integer>> results = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(8)) {
+            for (int t = 0; t < 8; t++) {
+                results.add(executor.submit(() -> {
+                    int taken = 0;
+                    for (int i = 0; i < 100; i++) {
+                        if (limiter.tryAcquireForUser(42L, Permissions.TRANSFER).allowed()) {
+                            taken++;
+                        }
+                    }
+                    return taken;
+                }));
+            }
+        }
+        int taken = 0;
+        for (Future<Integer> result : results) {
+            taken += result.get();
+        }
+        assertThat(taken).isEqualTo(20);
+    }
+
+    @Test
+    void refilledBucketsAreEvicted() throws Exception {
+        RateLimiter limiter = limiter();
+        ReflectionTestUtils.setField(limiter, "readPerSecond", 1000d);
+        limiter.init();
+
+        limiter.tryAcquireForKey("key-a", Permissions.READ);
+        limiter.tryAcquireForUser(1L, Permissions.TRANSFER);
+        limiter.evictIdle();
+        assertThat(limiter.size()).isEqualTo(2);
+
+        // The read bucket refills within a few milliseconds, the transfer bucket doesn't
+        Thread.sleep(5);
+        limiter.evictIdle();
+        assertThat(limiter.size()).isEqualTo(1);
+        assertThat(limiter.tryAcquireForUser(1L, Permissions.TRANSFER).remaining()).isEqualTo(18);
+    }
+
+    private static RateLimiter limiter() {
+        RateLimiter limiter = new RateLimiter();
+        for (String scope : List.of("deposit", "transfer", "read")) {
+            ReflectionTestUtils.setField(limiter, scope + "PerSecond", 0.001);
+            ReflectionTestUtils.setField(limiter, scope + "Burst", 10);
+        }
+        ReflectionTestUtils.setField(limiter, "userMultiplier", 2);
+        limiter.init();
+        return limiter;
+    }
+}
@@ -0,0 +1,96 @@
+package com.hng.wallet_service.services;
+
+import com.hng.wallet_service.TestWallets;
+import com.hng.wallet_service.models.JournalEntry;
+import com.hng.wallet_service.repositories.JournalRepository;
+import com.hng.wallet_service.utils.ReferenceGenerator;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = "wallet.balance-snapshot.enabled=false")
+class BalanceHistoryServiceTest {
+
+    @Autowired
+    private BalanceHistoryService balanceHistoryService;
+
+    @Autowired
+    private TestWallets testWallets;
+
+    @Autowired
+    private JournalRepository journalRepository;
+
+    @Autowired
+    private ReferenceGenerator referenceGenerator;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void balanceAtUsesRecordedBalancesAndDailySnapshots() {
+        LocalDate today = LocalDate.now(ZoneOffset.UTC);
+        LocalDate first = today.minusDays(4);
+        LocalDate second = today.minusDays(3);
+        LocalDate third = today.minusDays(2);
+        journalRepository.createPartition(JournalRepository.monthOf(at(first, 0)));
+
+        // Hot wallet postings record no balance_after
+        Long hot = testWallets.create().getId();
+        Long cold = testWallets.create().getId();
+        post(at(first, 8), JournalEntry.deposit("HISTORY_" + System.nanoTime(), cold, amount("200.00"), amount("200.00")));
+        post(at(first, 10), JournalEntry.deposit("HISTORY_" + System.nanoTime(), hot, amount("100.00"), null));
+        post(at(first, 12), JournalEntry.transfer("HISTORY_" + System.nanoTime(), hot, cold, amount("30.00"),
+                null, amount("230.00")));
+        post(at(second, 9), JournalEntry.transfer("HISTORY_" + System.nanoTime(), cold, hot, amount("50.00"),
+                amount("180.00"), null));
+
+        assertThat(balanceHistoryService.snapshotClosedDays()).isGreaterThanOrEqualTo(3);
+        assertThat(closingBalance(hot, first)).isEqualByComparingTo("70.00");
+        assertThat(closingBalance(hot, second)).isEqualByComparingTo("120.00");
+        assertThat(closingBalance(hot, third)).isNull();
+        assertThat(closingBalance(cold, second)).isEqualByComparingTo("180.00");
+
+        // Before any snapshot the hot wallet is summed from its first posting
+        assertThat(balanceHistoryService.balanceAt(hot, at(first, 11))).isEqualByComparingTo("100.00");
+        // Postings at exactly the instant are not included
+        assertThat(balanceHistoryService.balanceAt(hot, at(second, 9))).isEqualByComparingTo("70.00");
+        assertThat(balanceHistoryService.balanceAt(hot, at(third, 0))).isEqualByComparingTo("120.00");
+        assertThat(balanceHistoryService.balanceAt(hot, at(first, 0))).isEqualByComparingTo("0.00");
+
+        assertThat(balanceHistoryService.balanceAt(cold, at(first, 11))).isEqualByComparingTo("200.00");
+        assertThat(balanceHistoryService.balanceAt(cold, Instant.now())).isEqualByComparingTo("180.00");
+
+        // Days already taken are not snapshotted again
+        assertThat(balanceHistoryService.snapshotClosedDays()).isZero();
+    }
+
+
+    private void post(Instant postedAt, JournalEntry entry) {
+        journalRepository.insert(new long[] {referenceGenerator.nextId()}, List.of(entry), postedAt);
+    }
+
+    private static BigDecimal amount(String value) {
+        return new BigDecimal(value);
+    }
+
+    private BigDecimal closingBalance(Long walletId, LocalDate day) {
+        return jdbcTemplate.query("SELECT closing_balance FROM wallet_balance_snapshot "
+                        + "WHERE wallet_id = ? AND snapshot_date = ?",
+                rs -> rs.next() ? rs.getBigDecimal(1) : null, walletId, Date.valueOf(day));
+    }
+
+    private static Instant at(LocalDate day, int hour) {
+        return day.atTime(LocalTime.of(hour, 0)).toInstant(ZoneOffset.UTC);
+    }
+}
@@ -0,0 +1,150 @@
+package com.hng.wallet_service.services;
+
+import com.hng.wallet_service.TestWallets;
+import com.hng.wallet_service.models.Transaction;
+import com.hng.wallet_service.models.Wallet;
+import com.hng.wallet_service.models.enums.TransactionStatus;
+import com.hng.wallet_service.models.enums.TransactionType;
+import com.hng.wallet_service.repositories.TransactionRepository;
+import com.hng.wallet_service.repositories.WalletRepository;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs the reconciler against a local stand-in for Paystack's verify endpoint.
+ */
+@SpringBootTest(properties = {
+        "wallet.reconciler.enabled=false",
+        "wallet.reconciler.max-calls-per-second=1000"
+})
+class DepositReconcilerTest {
+
+    // Reference suffix -> status the stub reports; anything else is "not found"
+    private static final Map<String, String> PAYSTACK_STATUSES = Map.of(
+            "paid", "success",
+            "declined", "failed",
+            "closed", "abandoned",
+            "open", "ongoing");
+
+    private static final Set<String> VERIFIED = ConcurrentHashMap.newKeySet();
+    private static final HttpServer PAYSTACK = startPaystackStub();
+
+    @Autowired
+    private DepositReconciler depositReconciler;
+
+    @Autowired
+    private TestWallets testWallets;
+
+    @Autowired
+    private WalletRepository walletRepository;
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @DynamicPropertySource
+    static void paystackProperties(DynamicPropertyRegistry registry) {
+        registry.add("paystack.base-url", () -> "http://localhost:" + PAYSTACK.getAddress().getPort());
+    }
+
+    @AfterAll
+    static void stopPaystackStub() {
+        PAYSTACK.stop(0);
+    }
+
+    @Test
+    void settlesStaleDepositsFromPaystackStatus() {
+        Wallet wallet = testWallets.create();
+        String prefix = "RECON_" + System.nanoTime() + "_";
+        for (String suffix : List.of("paid", "declined", "closed", "open", "unknown")) {
+            createDeposit(wallet, prefix + suffix);
+        }
+        jdbcTemplate.update("UPDATE transactions SET created_at = now() - interval '2 hours' "
+                + "WHERE reference LIKE ?", prefix + "%");
+        createDeposit(wallet, prefix + "fresh");
+
+        depositReconciler.reconcile();
+
+        assertThat(statusOf(prefix + "paid")).isEqualTo(TransactionStatus.SUCCESS);
+        assertThat(statusOf(prefix + "declined")).isEqualTo(TransactionStatus.FAILED);
+        assertThat(statusOf(prefix + "closed")).isEqualTo(TransactionStatus.FAILED);
+        assertThat(statusOf(prefix + "unknown")).isEqualTo(TransactionStatus.FAILED);
+        assertThat(statusOf(prefix + "open")).isEqualTo(TransactionStatus.PENDING);
+        assertThat(statusOf(prefix + "fresh")).isEqualTo(TransactionStatus.PENDING);
+        assertThat(VERIFIED).doesNotContain(prefix + "fresh");
+        assertThat(balanceOf(wallet)).isEqualByComparingTo("150.00");
+
+        // Settled deposits drop out of the scan, so a second run credits nothing more
+        VERIFIED.clear();
+        depositReconciler.reconcile();
+
+        assertThat(VERIFIED).containsExactly(prefix + "open");
+        assertThat(balanceOf(wallet)).isEqualByComparingTo("150.00");
+    }
+
+
+    private void createDeposit(Wallet wallet, String reference) {
+        Transaction transaction = new Transaction();
+        transaction.setReference(reference);
+        transaction.setWallet(wallet);
+        transaction.setType(TransactionType.DEPOSIT);
+        transaction.setAmount(new BigDecimal("150.00"));
+        transaction.setStatus(TransactionStatus.PENDING);
+        transactionRepository.save(transaction);
+    }
+
+    private TransactionStatus statusOf(String reference) {
+        return transactionRepository.findByReference(reference).orElseThrow().getStatus();
+    }
+
+    private BigDecimal balanceOf(Wallet wallet) {
+        return walletRepository.findById(wallet.getId()).orElseThrow().getBalance();
+    }
+
+    private static HttpServer startPaystackStub() {
+        try {
+            HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+            server.createContext("/transaction/verify/", exchange -> {
+                String path = exchange.getRequestURI().getPath();
+                String reference = path.substring(path.lastIndexOf('/') + 1);
+                VERIFIED.add(reference);
+
+                String status = PAYSTACK_STATUSES.get(reference.substring(reference.lastIndexOf('_') + 1));
+                String body = status == null
+                        ? "{\"status\":false,\"message\":\"Transaction reference not found\"}"
+                        : "{\"status\":true,\"data\":{\"reference\":\"" + reference + "\",\"status\":\"" + status + "\"}}";
+                byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "application/json");
+                exchange.sendResponseHeaders(status == null ? 400 : 200, bytes.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(bytes);
+                }
+            });
+            server.start();
+            return server;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.hng.wallet_service.services;
+
+import com.hng.wallet_service.TestWallets;
+import com.hng.wallet_service.exceptions.IdempotencyConflictException;
+import com.hng.wallet_service.models.IdempotencyRecord;
+import com.hng.wallet_service.models.Wallet;
+import com.hng.wallet_service.models.enums.WalletTier;
+import com.hng.wallet_service.repositories.IdempotencyRecordRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest
+class IdempotencyServiceTest {
+
+    private static final Map<String, String> COMPLETED = Map.of("status", "success");
+
+    @Autowired
+    private IdempotencyService idempotencyService;
+
+    @Autowired
+    private IdempotencyRecordRepository idempotencyRecordRepository;
+
+    @Autowired
+    private TransferService transferService;
+
+    @Autowired
+    private TestWallets testWallets;
+
+    @Test
+    void claimsLeftByACrashedRequestAreTakenOverOnceTheirLeaseRunsOut() {
+        Wallet sender = testWallets.create(WalletTier.STANDARD, new BigDecimal("100.00"));
+        Wallet recipient = testWallets.create();
+        Long userId = sender.getUser().getId();
+        String request = "transfer:" + recipient.getWalletNumber() + ":10.00";
+        AtomicInteger runs = new AtomicInteger();
+
+        // Crashed after posting: the retry finds the transfer in the journal and doesn't post it again
+        transferService.transfer(userId, recipient.getWalletNumber(), new BigDecimal("10.00"), "TRANSFER_CRASHED1");
+        claim(userId, "posted", request, "TRANSFER_CRASHED1", Instant.now().minusSeconds(1));
+        assertThat(transfer(userId, "posted", request, recipient, runs)).isEqualTo(COMPLETED);
+        assertThat(runs).hasValue(0);
+
+        // Crashed before posting: the retry posts it, under the claim's reference
+        claim(userId, "lost", request, "TRANSFER_CRASHED2", Instant.now().minusSeconds(1));
+        assertThat(transfer(userId, "lost", request, recipient, runs)).isEqualTo(COMPLETED);
+        assertThat(runs).hasValue(1);
+        assertThat(transferService.isPosted("TRANSFER_CRASHED2")).isTrue();
+
+        // Still leased: the original may yet finish
+        claim(userId, "running", request, "TRANSFER_RUNNING", Instant.now().plusSeconds(60));
+        assertThatThrownBy(() -> transfer(userId, "running", request, recipient, runs))
+                .isInstanceOf(IdempotencyConflictException.class);
+        assertThat(runs).hasValue(1);
+        assertThat(transferService.isPosted("TRANSFER_RUNNING")).isFalse();
+    }
+
+    private Map<String, String> transfer(Long userId, String key, String request, Wallet recipient,
+            AtomicInteger runs) {
+        return idempotencyService.execute(userId, key, request, "TRANSFER",
+                reference -> {
+                    runs.incrementAndGet();
+                    transferService.transfer(userId, recipient.getWalletNumber(), new BigDecimal("10.00"), reference);
+                    return COMPLETED;
+                },
+                reference -> transferService.isPosted(reference) ? COMPLETED : null);
+    }
+
+    // What a request leaves behind when its instance dies mid-flight
+    private void claim(Long userId, String key, String request, String reference, Instant leaseUntil) {
+        idempotencyRecordRepository.saveAndFlush(
+                new IdempotencyRecord(userId, key, sha256(request), reference, null, leaseUntil));
+    }
+
+    private static String sha256(String request) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256")
+                    .digest(request.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
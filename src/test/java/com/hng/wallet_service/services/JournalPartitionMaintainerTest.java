@@ -0,0 +1,142 @@
+package com.hng.wallet_service.services;
+
+import com.hng.wallet_service.TestWallets;
+import com.hng.wallet_service.archive.JournalArchive;
+import com.hng.wallet_service.dto.TransactionSummaryDTO;
+import com.hng.wallet_service.models.JournalEntry;
+import com.hng.wallet_service.repositories.JournalRepository;
+import com.hng.wallet_service.utils.ReferenceGenerator;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = {
+        "wallet.balance-snapshot.enabled=false",
+        "wallet.journal.archive-dir=target/journal-archive-test",
+        "wallet.journal.archive-clear-on-empty-schema=true"
+})
+class JournalPartitionMaintainerTest {
+
+    private static final YearMonth ARCHIVED_MONTH = YearMonth.of(2020, 3);
+
+    @Autowired
+    private JournalPartitionMaintainer journalPartitionMaintainer;
+
+    @Autowired
+    private JournalRepository journalRepository;
+
+    @Autowired
+    private JournalArchive journalArchive;
+
+    @Autowired
+    private TransactionService transactionService;
+
+    @Autowired
+    private StatementExportService statementExportService;
+
+    @Autowired
+    private BalanceHistoryService balanceHistoryService;
+
+    @Autowired
+    private ReferenceGenerator referenceGenerator;
+
+    @Autowired
+    private TestWallets testWallets;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void expiredMonthsAreArchivedAndReadThrough() {
+        try {
+            archiveAndReadThrough();
+        } finally {
+            // Other test contexts share the database but not this archive directory
+            journalArchive.clear();
+        }
+    }
+
+    private void archiveAndReadThrough() {
+        journalRepository.dropDetachedPartition(ARCHIVED_MONTH);
+        journalRepository.createPartition(ARCHIVED_MONTH);
+        Long wallet = testWallets.create().getId();
+        Long recipient = testWallets.create().getId();
+
+        // More deposits than fit in one segment block, then a transfer later in the month
+        List<JournalEntry> deposits = new ArrayList<>();
+        long[] ids = new long[300];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = referenceGenerator.nextId();
+            deposits.add(JournalEntry.deposit("ARCHIVE_" + ids[i], wallet, new BigDecimal("1.00"),
+                    new BigDecimal(i + 1 + ".00")));
+        }
+        journalRepository.insert(ids, deposits, ARCHIVED_MONTH.atDay(10).atStartOfDay(ZoneOffset.UTC).toInstant());
+        journalRepository.insert(new long[] {referenceGenerator.nextId()},
+                List.of(JournalEntry.transfer("ARCHIVE_" + System.nanoTime(), wallet, recipient, new BigDecimal("50.00"),
+                        new BigDecimal("250.00"), new BigDecimal("50.00"))),
+                ARCHIVED_MONTH.atDay(20).atStartOfDay(ZoneOffset.UTC).toInstant());
+        transactionService.postJournalEntries(List.of(JournalEntry.deposit("ARCHIVE_" + System.nanoTime(), wallet,
+                new BigDecimal("5.00"), new BigDecimal("255.00"))));
+
+        // Archived while still attached: read from the archive only, never twice
+        journalArchive.archive(ARCHIVED_MONTH);
+        assertHistory(wallet);
+
+        // Another instance that hasn't loaded the month yet keeps its table in place
+        jdbcTemplate.update("DELETE FROM journal_archive_reader");
+        jdbcTemplate.update("INSERT INTO journal_archive_reader (instance_id, newest_month, seen_at) "
+                + "VALUES ('lagging', NULL, now())");
+        journalRepository.detachPartition(ARCHIVED_MONTH);
+        assertThat(journalPartitionMaintainer.archiveExpiredPartitions()).isEmpty();
+        assertThat(jdbcTemplate.queryForObject("SELECT to_regclass(?) IS NULL", Boolean.class,
+                JournalRepository.partitionName(ARCHIVED_MONTH))).isFalse();
+
+        jdbcTemplate.update("DELETE FROM journal_archive_reader");
+        journalArchive.sync();
+        assertThat(journalPartitionMaintainer.archiveExpiredPartitions()).containsExactly(ARCHIVED_MONTH);
+        assertThat(jdbcTemplate.queryForObject("SELECT to_regclass(?) IS NULL", Boolean.class,
+                JournalRepository.partitionName(ARCHIVED_MONTH))).isTrue();
+
+        // History pages run from the table into the archive without a seam
+        assertHistory(wallet);
+        assertThat(transactionService.getTransactionPage(recipient, null, 10).transactions()).hasSize(1);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        statementExportService.export(wallet, ARCHIVED_MONTH.atDay(1).atStartOfDay(ZoneOffset.UTC).toInstant(),
+                Instant.now().plusSeconds(60), StatementExportService.StatementFormat.CSV, out);
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertThat(lines).hasSize(303);
+        assertThat(lines[1]).contains(",deposit,1.00,success,,2020-03-10T00:00:00Z");
+        assertThat(lines[302]).contains(",deposit,5.00,success,");
+
+        assertThat(balanceHistoryService.balanceAt(wallet,
+                ARCHIVED_MONTH.atDay(15).atStartOfDay(ZoneOffset.UTC).toInstant())).isEqualByComparingTo("300.00");
+        assertThat(balanceHistoryService.balanceAt(recipient, Instant.now())).isEqualByComparingTo("50.00");
+    }
+
+    private void assertHistory(Long wallet) {
+        List<TransactionSummaryDTO> history = new ArrayList<>();
+        String cursor = null;
+        do {
+            TransactionService.TransactionPage page = transactionService.getTransactionPage(wallet, cursor, 120);
+            history.addAll(page.transactions());
+            cursor = page.nextCursor();
+        } while (cursor != null);
+        assertThat(history).hasSize(302);
+        assertThat(history.get(0).getAmount()).isEqualByComparingTo("5.00");
+        assertThat(history.get(1).getAmount()).isEqualByComparingTo("50.00");
+        assertThat(history).extracting(TransactionSummaryDTO::getId).doesNotHaveDuplicates();
+    }
+}
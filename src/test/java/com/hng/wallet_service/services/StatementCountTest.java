@@ -0,0 +1,225 @@
+package com.hng.wallet_service.services;
+
+import com.hng.wallet_service.dto.AuthResponseDTO;
+import com.hng.wallet_service.models.Wallet;
+import com.hng.wallet_service.models.enums.TransactionStatus;
+import com.hng.wallet_service.models.enums.TransactionType;
+import com.hng.wallet_service.repositories.TransactionRepository;
+import com.hng.wallet_service.repositories.UserRepository;
+import com.hng.wallet_service.repositories.WalletRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.oauth2.core.user.DefaultOAuth2User;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Counts the statements (one per execute or executeBatch, so one per round trip)
+ * that the main write paths send, so extra queries and unbatched writes show up
+ * as failures.
+ */
+@SpringBootTest(properties = {
+        "wallet.reconciler.enabled=false",
+        "wallet.webhook-inbox.poll-interval-ms=3600000"
+})
+class StatementCountTest {
+
+    @Autowired
+    private AuthService authService;
+
+    @Autowired
+    private TransferService transferService;
+
+    @Autowired
+    private PaystackService paystackService;
+
+    @Autowired
+    private TransactionService transactionService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private WalletRepository walletRepository;
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void newUserAndWalletAreInsertedWithoutExtraQueries() {
+        // Reserves the first wallet number block and id blocks
+        signUp();
+
+        List<String> statements = recordStatements(this::signUp);
+
+        // Lookup by Google subject, then one insert per table
+        assertThat(statements).hasSize(3);
+        assertThat(writes(statements)).hasSize(2);
+    }
+
+    @Test
+    void transferTakesTwoWriteRoundTrips() {
+        AuthResponseDTO sender = signUp();
+        AuthResponseDTO recipient = signUp();
+        jdbcTemplate.update("UPDATE wallet SET balance = 1000 WHERE wallet_number = ?", sender.getWalletNumber());
+        Long senderUserId = userRepository.findByEmail(sender.getEmail()).orElseThrow().getId();
+        transferService.transfer(senderUserId, recipient.getWalletNumber(), new BigDecimal("10.00"));
+
+        List<String> statements = recordStatements(() ->
+                transferService.transfer(senderUserId, recipient.getWalletNumber(), new BigDecimal("10.00")));
+
+        // Two id lookups, the debit and credit batch, and the journal entry with both legs
+        assertThat(statements).hasSize(4);
+        assertThat(writes(statements)).hasSize(2);
+        assertThat(walletRepository.findByWalletNumber(recipient.getWalletNumber()).orElseThrow().getBalance())
+                .isEqualByComparingTo("20.00");
+    }
+
+    @Test
+    void webhookCreditTakesThreeWrites() {
+        AuthResponseDTO depositor = signUp();
+        Wallet wallet = walletRepository.findByWalletNumber(depositor.getWalletNumber()).orElseThrow();
+        String reference = "TXN_COUNT_" + System.nanoTime();
+        transactionService.createTransaction(reference, wallet, TransactionType.DEPOSIT,
+                new BigDecimal("500.00"), TransactionStatus.PENDING, null);
+
+        List<String> statements = recordStatements(() ->
+                paystackService.applyChargeEvent("charge.success", reference, "success"));
+
+        // Lock the deposit, credit the wallet, journal the credit, mark the deposit SUCCESS
+        assertThat(statements).hasSize(4);
+        assertThat(writes(statements)).hasSize(3);
+        assertThat(transactionRepository.findByReference(reference).orElseThrow().getStatus())
+                .isEqualTo(TransactionStatus.SUCCESS);
+    }
+
+    private AuthResponseDTO signUp() {
+        String subject = String.valueOf(System.nanoTime());
+        return authService.handleGoogleLogin(new DefaultOAuth2User(
+                AuthorityUtils.createAuthorityList("ROLE_USER"),
+                Map.of("sub", subject, "email", "count" + subject + "@example.com", "name", "Count " + subject),
+                "sub"));
+    }
+
+    private static List<String> recordStatements(Runnable action) {
+        return StatementCounter.record(action);
+    }
+
+    private static List<String> writes(List<String> statements) {
+        return statements.stream()
+                .filter(sql -> !sql.toLowerCase(Locale.ROOT).stripLeading().startsWith("select"))
+                .toList();
+    }
+
+    @TestConfiguration
+    static class CountingDataSourceConfig {
+
+        @Bean
+        static BeanPostProcessor countingDataSourcePostProcessor() {
+            return new BeanPostProcessor() {
+                @Override
+                public Object postProcessAfterInitialization(Object bean, String beanName) {
+                    return bean instanceof DataSource dataSource && !(bean instanceof StatementCounter)
+                            ? new StatementCounter(dataSource)
+                            : bean;
+                }
+            };
+        }
+    }
+
+    /**
+     * Records the SQL of every statement the recording thread executes. Other
+     * threads, such as schedulers, are ignored.
+     */
+    static class StatementCounter extends DelegatingDataSource {
+
+        private static volatile Thread recordingThread;
+        private static final List<String> executed = new CopyOnWriteArrayList<>();
+
+        StatementCounter(DataSource target) {
+            super(target);
+        }
+
+        static List<String> record(Runnable action) {
+            executed.clear();
+            recordingThread = Thread.currentThread();
+            try {
+                action.run();
+            } finally {
+                recordingThread = null;
+            }
+            return List.copyOf(executed);
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            return wrapConnection(super.getConnection());
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            return wrapConnection(super.getConnection(username, password));
+        }
+
+        private static Connection wrapConnection(Connection connection) {
+            return (Connection) Proxy.newProxyInstance(StatementCounter.class.getClassLoader(),
+                    new Class<?>[] {Connection.class}, (proxy, method, args) -> {
+                        Object result = invoke(connection, method, args);
+                        if (result instanceof Statement statement && method.getName().startsWith("prepare")) {
+                            return wrapStatement(statement, (String) args[0]);
+                        }
+                        if (result instanceof Statement statement) {
+                            return wrapStatement(statement, null);
+                        }
+                        return result;
+                    });
+        }
+
+        private static Statement wrapStatement(Statement statement, String preparedSql) {
+            Class<?> type = statement instanceof PreparedStatement ? PreparedStatement.class : Statement.class;
+            InvocationHandler handler = (proxy, method, args) -> {
+                String name = method.getName();
+                if (name.startsWith("execute") && Thread.currentThread() == recordingThread) {
+                    executed.add(preparedSql != null ? preparedSql
+                            : args != null && args.length > 0 ? String.valueOf(args[0]) : name);
+                }
+                return invoke(statement, method, args);
+            };
+            return (Statement) Proxy.newProxyInstance(StatementCounter.class.getClassLoader(),
+                    new Class<?>[] {type}, handler);
+        }
+
+        private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
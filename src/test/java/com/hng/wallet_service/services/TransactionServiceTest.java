@@ -0,0 +1,88 @@
+package com.hng.wallet_service.services;
+
+import com.hng.wallet_service.TestWallets;
+import com.hng.wallet_service.dto.TransactionSummaryDTO;
+import com.hng.wallet_service.models.JournalEntry;
+import com.hng.wallet_service.models.Wallet;
+import com.hng.wallet_service.models.enums.TransactionType;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest
+class TransactionServiceTest {
+
+    @Autowired
+    private TransactionService transactionService;
+
+    @Autowired
+    private TransferService transferService;
+
+    @Autowired
+    private TestWallets testWallets;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void historyIsServedFromTheJournal() {
+        Wallet sender = testWallets.create();
+        Wallet recipient = testWallets.create();
+        jdbcTemplate.update("UPDATE wallet SET balance = 100 WHERE id = ?", sender.getId());
+        for (String amount : List.of("10.00", "20.00", "30.00")) {
+            transferService.transfer(sender.getUser().getId(), recipient.getWalletNumber(), new BigDecimal(amount));
+        }
+
+        // One posting per page, following the cursor back to the first transfer
+        List<TransactionSummaryDTO> history = new ArrayList<>();
+        String cursor = null;
+        do {
+            TransactionService.TransactionPage page = transactionService.getTransactionPage(sender.getId(), cursor, 1);
+            history.addAll(page.transactions());
+            cursor = page.nextCursor();
+        } while (cursor != null);
+
+        assertThat(history).extracting(TransactionSummaryDTO::getType).containsOnly(TransactionType.TRANSFER_OUT);
+        assertThat(history).extracting(TransactionSummaryDTO::getAmount)
+                .containsExactly(new BigDecimal("30.00"), new BigDecimal("20.00"), new BigDecimal("10.00"));
+
+        // Every entry balances, and both legs of each transfer are in it
+        assertThat(jdbcTemplate.queryForObject("SELECT count(*) FROM (SELECT journal_id FROM journal_postings "
+                + "WHERE wallet_id IN (?, ?) GROUP BY journal_id HAVING sum(amount) = 0 AND count(*) = 2) e",
+                Integer.class, sender.getId(), recipient.getId())).isEqualTo(3);
+    }
+
+    @Test
+    void journalOnlyTakesBalancedEntriesAndIsNeverRewritten() {
+        Wallet wallet = testWallets.create();
+
+        assertThatThrownBy(() -> new JournalEntry(List.of(
+                JournalEntry.Posting.transferIn("JOURNAL_IN", wallet.getId(), null, new BigDecimal("5.00"), null),
+                JournalEntry.Posting.transferOut("JOURNAL_OUT", wallet.getId(), null, new BigDecimal("4.00"), null))))
+                .isInstanceOf(IllegalArgumentException.class);
+
+        // The table enforces the same, whoever writes to it
+        assertThatThrownBy(() -> jdbcTemplate.update("INSERT INTO journal_postings (journal_id, leg, reference, "
+                        + "account, wallet_id, type, amount, posted_at) VALUES "
+                        + "(1, 0, 'JOURNAL_RAW', 'WALLET', ?, 'DEPOSIT', 5, now()), "
+                        + "(1, 1, 'JOURNAL_RAW', 'PAYSTACK', NULL, 'DEPOSIT', -4, now())", wallet.getId()))
+                .isInstanceOf(DataAccessException.class)
+                .hasMessageContaining("does not balance");
+
+        transactionService.postJournalEntries(List.of(JournalEntry.deposit("JOURNAL_" + System.nanoTime(),
+                wallet.getId(), new BigDecimal("5.00"), new BigDecimal("5.00"))));
+        assertThatThrownBy(() -> jdbcTemplate.update(
+                "UPDATE journal_postings SET amount = amount * 2 WHERE wallet_id = ?", wallet.getId()))
+                .isInstanceOf(DataAccessException.class)
+                .hasMessageContaining("append-only");
+    }
+}
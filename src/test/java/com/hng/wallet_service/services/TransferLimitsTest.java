@@ -0,0 +1,143 @@
+package com.hng.wallet_service.services;
+
+import com.hng.wallet_service.TestWallets;
+import com.hng.wallet_service.exceptions.InsufficientBalanceException;
+import com.hng.wallet_service.exceptions.TransferLimitExceededException;
+import com.hng.wallet_service.models.JournalEntry;
+import com.hng.wallet_service.models.Wallet;
+import com.hng.wallet_service.models.enums.WalletTier;
+import com.hng.wallet_service.repositories.JournalRepository;
+import com.hng.wallet_service.utils.ReferenceGenerator;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest(properties = {
+        "wallet.limits.standard.hourly-count=3",
+        "wallet.limits.standard.daily-amount=100",
+        "wallet.limits.premium.hourly-count=0"
+})
+class TransferLimitsTest {
+
+    @Autowired
+    private TransferService transferService;
+
+    @Autowired
+    private TransferLimits transferLimits;
+
+    @Autowired
+    private JournalRepository journalRepository;
+
+    @Autowired
+    private ReferenceGenerator referenceGenerator;
+
+    @Autowired
+    private TestWallets testWallets;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void limitsCountRecentTransfersFromTheJournalAndInMemory() {
+        Wallet sender = testWallets.create(WalletTier.STANDARD, new BigDecimal("1000.00"));
+        Wallet recipient = testWallets.create(WalletTier.STANDARD, new BigDecimal("0.00"));
+        Long senderUserId = sender.getUser().getId();
+
+        // Sent before the windows were first loaded: one transfer 30 minutes ago, one two days ago
+        postTransfer(sender, recipient, "20.00", Instant.now().minus(Duration.ofMinutes(30)));
+        postTransfer(sender, recipient, "20.00", Instant.now().minus(Duration.ofDays(2)));
+
+        transferService.transfer(senderUserId, recipient.getWalletNumber(), new BigDecimal("30.00"));
+
+        // A failed transfer is not counted
+        assertThatThrownBy(() -> transferService.transfer(senderUserId, recipient.getWalletNumber(),
+                new BigDecimal("5000.00")))
+                .isInstanceOf(TransferLimitExceededException.class)
+                .hasMessageContaining("daily limit");
+        jdbcTemplate.update("UPDATE wallet SET balance = 10 WHERE id = ?", sender.getId());
+        assertThatThrownBy(() -> transferService.transfer(senderUserId, recipient.getWalletNumber(),
+                new BigDecimal("40.00")))
+                .isInstanceOf(InsufficientBalanceException.class);
+        jdbcTemplate.update("UPDATE wallet SET balance = 1000 WHERE id = ?", sender.getId());
+
+        // 20 + 30 + 50 reaches the daily amount exactly, and 3 transfers the hourly count
+        transferService.transfer(senderUserId, recipient.getWalletNumber(), new BigDecimal("50.00"));
+        assertThatThrownBy(() -> transferService.transfer(senderUserId, recipient.getWalletNumber(),
+                new BigDecimal("0.01")))
+                .isInstanceOf(TransferLimitExceededException.class)
+                .hasMessageContaining("Hourly limit of 3 transfers");
+
+        // Other tiers have their own policy, and a payout counts as one transfer per item
+        Wallet premium = testWallets.create(WalletTier.PREMIUM, new BigDecimal("1000.00"));
+        List<TransferService.BatchTransferItem> items = List.of(
+                new TransferService.BatchTransferItem(recipient.getWalletNumber(), new BigDecimal("100.00")),
+                new TransferService.BatchTransferItem(recipient.getWalletNumber(), new BigDecimal("100.00")),
+                new TransferService.BatchTransferItem(recipient.getWalletNumber(), new BigDecimal("100.00")),
+                new TransferService.BatchTransferItem(recipient.getWalletNumber(), new BigDecimal("100.00")));
+        assertThat(transferService.transferBatch(premium.getUser().getId(), items))
+                .allMatch(result -> result.status().equals("success"));
+        assertThatThrownBy(() -> transferService.transferBatch(senderUserId, items))
+                .isInstanceOf(TransferLimitExceededException.class);
+    }
+
+    @Test
+    void concurrentFirstUseAndReloadsKeepEveryReservation() throws Exception {
+        Long walletId = testWallets.create(WalletTier.STANDARD, new BigDecimal("1000.00")).getId();
+
+        // Callers racing to load the wallet's windows count against the same ones
+        List<Future<TransferLimits.Reservation>> results = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(8)) {
+            for (int t = 0; t < 8; t++) {
+                results.add(executor.submit(() -> transferLimits.reserve(walletId, 1, BigDecimal.ONE)));
+            }
+        }
+        List<TransferLimits.Reservation> reserved = new ArrayList<>();
+        for (Future<TransferLimits.Reservation> result : results) {
+            try {
+                reserved.add(result.get());
+            } catch (ExecutionException e) {
+                assertThat(e.getCause()).isInstanceOf(TransferLimitExceededException.class);
+            }
+        }
+        assertThat(reserved).hasSize(3);
+
+        // Reloaded on every use now: reservations not yet posted are carried over,
+        // and a release still finds them in the new windows
+        ReflectionTestUtils.setField(transferLimits, "refreshMillis", 0L);
+        try {
+            assertThatThrownBy(() -> transferLimits.reserve(walletId, 1, BigDecimal.ONE))
+                    .isInstanceOf(TransferLimitExceededException.class);
+            reserved.get(0).release();
+            transferLimits.reserve(walletId, 1, BigDecimal.ONE).release();
+            transferLimits.evictStale();
+            assertThatThrownBy(() -> transferLimits.reserve(walletId, 2, BigDecimal.ONE))
+                    .isInstanceOf(TransferLimitExceededException.class);
+        } finally {
+            reserved.forEach(TransferLimits.Reservation::release);
+            ReflectionTestUtils.setField(transferLimits, "refreshMillis", 60_000L);
+        }
+    }
+
+    private void postTransfer(Wallet sender, Wallet recipient, String amount, Instant postedAt) {
+        journalRepository.createPartition(JournalRepository.monthOf(postedAt));
+        journalRepository.insert(new long[] {referenceGenerator.nextId()},
+                List.of(JournalEntry.transfer("LIMITS_" + System.nanoTime(), sender.getId(), recipient.getId(),
+                        new BigDecimal(amount), null, null)),
+                postedAt);
+    }
+}
@@ -0,0 +1,62 @@
+package com.hng.wallet_service.utils;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ReferenceGeneratorTest {
+
+    @Test
+    void referencesAreUniqueAndTimeOrderedAcrossThreads() throws Exception {
+        ReferenceGenerator generator = new ReferenceGenerator();
+        ReflectionTestUtils.setField(generator, "configuredNodeId", 7L);
+        generator.init();
+
+        int threads = 8;
+        int perThread = 100_000;
+        Set<String> seen = ConcurrentHashMap.newKeySet();
+        List<Future<Boolean>> results = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(threads)) {
+            for (int t = 0; t < threads; t++) {
+                results.add(executor.submit(() -> {
+                    String previous = "";
+                    for (int i = 0; i < perThread; i++) {
+                        String reference = generator.next("TXN");
+                        if (reference.compareTo(previous) <= 0 || !seen.add(reference)) {
+                            return false;
+                        }
+                        previous = reference;
+                    }
+                    return true;
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                assertThat(result.get()).isTrue();
+            }
+        }
+        assertThat(seen).hasSize(threads * perThread);
+    }
+
+    @Test
+    void startupNeedsANodeIdUnlessThereIsOnlyOneInstance() {
+        ReferenceGenerator unset = new ReferenceGenerator();
+        ReflectionTestUtils.setField(unset, "configuredNodeId", -1L);
+        assertThatThrownBy(unset::init).isInstanceOf(IllegalStateException.class);
+
+        ReferenceGenerator single = new ReferenceGenerator();
+        ReflectionTestUtils.setField(single, "configuredNodeId", -1L);
+        ReflectionTestUtils.setField(single, "singleInstance", true);
+        single.init();
+        assertThat((single.nextId() >>> 12) & 1023).isZero();
+    }
+}